@@ -0,0 +1,845 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.DataBufferInt;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.podrug.line.RasterSampler.Layout;
+
+/**
+ * This class implements a graphics context which draws straight lines with
+ * the line rasterizer and forwards everything else to another graphics
+ * context.
+ * <p>
+ * {@link #drawLine(int, int, int, int) drawLine},
+ * {@link #drawPolyline(int[], int[], int) drawPolyline},
+ * {@link #drawPolygon(int[], int[], int) drawPolygon} and
+ * {@link #draw(Shape) draw} are intercepted if the paint is a {@link Color},
+ * the stroke is a {@link BasicStroke} without dashes, the composite is an
+ * {@link AlphaComposite#SRC_OVER} one, antialiasing is not turned on, the
+ * transform scales both axes by the same factor and the shape consists solely
+ * of straight line segments. Everything else, including XOR mode, is drawn by
+ * the underlying graphics context. The width of the stroke is scaled by the
+ * transform and rounded like the width passed to {@link LineRenderer}, so a
+ * stroke is as wide in device pixels as Java 2D draws it.
+ * <p>
+ * The intercepted lines are recorded into a {@link DisplayList} in device
+ * coordinates and rendered in a single pass into an intermediate image which
+ * is then drawn with a single {@code drawImage} call. The extra alpha of the
+ * composite is applied to every line while rendering the intermediate image,
+ * so overlapping lines blend the same way as if they were drawn one by one.
+ * The batch is flushed before the composite or the clip change, before
+ * anything else is drawn, on {@link #flush()} and on {@link #dispose()}.
+ * <p>
+ * A graphics context and the ones created from it share one batch which
+ * records the lines of a single context at a time; drawing with any of them
+ * flushes the lines recorded by the others first, so the drawing order is
+ * preserved.
+ */
+public class BatchingGraphics2D extends Graphics2D
+{
+    /***************************************************************************
+     * HELPER TYPES                                                            *
+     **************************************************************************/
+
+    /**
+     * The batch shared by a graphics context and the ones created from it.
+     */
+    static final class Batch
+    {
+        final DisplayList list = new DisplayList();
+        final DisplayListRecorder recorder = new DisplayListRecorder(list);
+        BufferedImage image;
+
+        // The graphics context whose lines are recorded, if any.
+        //
+
+        BatchingGraphics2D owner;
+    }
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final Graphics2D delegate;
+    final Batch batch;
+
+    /**
+     * Creates a graphics context which draws to the specified graphics
+     * context.
+     */
+    public BatchingGraphics2D(Graphics2D delegate)
+    {
+        this(delegate, new Batch());
+    }
+
+    /**
+     * Creates a graphics context which draws to the specified graphics context
+     * and records into the specified batch.
+     */
+    BatchingGraphics2D(Graphics2D delegate, Batch batch)
+    {
+        if (delegate == null)
+            throw new IllegalArgumentException("The graphics context cannot be null.");
+
+        this.delegate = delegate;
+        this.batch = batch;
+    }
+
+    /**
+     * Renders the recorded lines of this graphics context and of the ones
+     * related to it to their underlying graphics context.
+     */
+    public void flush()
+    {
+        BatchingGraphics2D owner = batch.owner;
+        if (owner != null)
+            owner.renderBatch();
+    }
+
+    /**
+     * Renders the lines of the batch, which have been recorded by this
+     * graphics context, to the underlying graphics context and clears the
+     * batch.
+     */
+    void renderBatch()
+    {
+        // Restrict the intermediate image to the clip, which is specified in
+        // user space.
+        //
+
+        Rectangle bounds = batch.list.getBounds();
+        Shape clip = delegate.getClip();
+        if (clip != null)
+            bounds = bounds.intersection(delegate.getTransform().createTransformedShape(clip).getBounds());
+
+        if (!bounds.isEmpty())
+        {
+            int width = bounds.width;
+            int height = bounds.height;
+            BufferedImage image = batch.image;
+            if (image == null || image.getWidth() < width || image.getHeight() < height)
+            {
+                image = new BufferedImage(
+                        Math.max(width, (image != null) ? image.getWidth() : 0),
+                        Math.max(height, (image != null) ? image.getHeight() : 0),
+                        BufferedImage.TYPE_INT_ARGB_PRE
+                        );
+                batch.image = image;
+            }
+
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int scanline = image.getWidth();
+            for (int row = 0; row < height; row++)
+                Arrays.fill(data, row * scanline, row * scanline + width, 0);
+
+            // The extra alpha is applied to every line so the intermediate
+            // image is drawn without it.
+            //
+
+            Composite composite = delegate.getComposite();
+            RasterSampler sampler = new RasterSampler(data, 0, scanline, width, height, Layout.ARGB_PRE);
+            sampler.setExtraAlpha(((AlphaComposite) composite).getAlpha());
+            batch.list.replay(sampler, -bounds.x, -bounds.y);
+
+            AffineTransform transform = delegate.getTransform();
+            delegate.setTransform(LineRenderer.identity);
+            delegate.setComposite(AlphaComposite.SrcOver);
+            delegate.drawImage(image.getSubimage(0, 0, width, height), bounds.x, bounds.y, null);
+            delegate.setComposite(composite);
+            delegate.setTransform(transform);
+        }
+
+        batch.list.clear();
+        batch.owner = null;
+    }
+
+    /**
+     * Returns true if lines drawn with the current state can be recorded into
+     * the batch, false if they have to be drawn by the underlying graphics
+     * context.
+     */
+    boolean canRender()
+    {
+        if (!(delegate.getPaint() instanceof Color))
+            return false;
+
+        Stroke stroke = delegate.getStroke();
+        if (!(stroke instanceof BasicStroke) || ((BasicStroke) stroke).getDashArray() != null)
+            return false;
+
+        Composite composite = delegate.getComposite();
+        if (!(composite instanceof AlphaComposite)
+                || ((AlphaComposite) composite).getRule() != AlphaComposite.SRC_OVER)
+            return false;
+
+        if (delegate.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON)
+            return false;
+
+        return !Double.isNaN(scaleOf(delegate.getTransform()));
+    }
+
+    /**
+     * Returns the width of the current stroke in device pixels.
+     */
+    float getLineWidth()
+    {
+        float width = ((BasicStroke) delegate.getStroke()).getLineWidth();
+        return (float) (width * scaleOf(delegate.getTransform()));
+    }
+
+    /**
+     * Returns the factor by which the specified transform scales both axes,
+     * or NaN if it scales them differently or shears them.
+     */
+    static double scaleOf(AffineTransform transform)
+    {
+        double scaleX = transform.getScaleX();
+        double shearX = transform.getShearX();
+        double shearY = transform.getShearY();
+        double scaleY = transform.getScaleY();
+
+        // The images of the unit vectors must be orthogonal and equally long.
+        //
+
+        double lengthX = scaleX * scaleX + shearY * shearY;
+        double lengthY = shearX * shearX + scaleY * scaleY;
+        double tolerance = 1e-9 * Math.max(lengthX, lengthY);
+        if (Math.abs(lengthX - lengthY) > tolerance || Math.abs(scaleX * shearX + shearY * scaleY) > tolerance)
+            return Double.NaN;
+
+        return Math.sqrt(lengthX);
+    }
+
+    /**
+     * Makes this graphics context the one whose lines are recorded into the
+     * batch, flushing the lines recorded by another one first.
+     */
+    void acquireBatch()
+    {
+        if (batch.owner == this)
+            return;
+
+        flush();
+        batch.owner = this;
+    }
+
+    /**
+     * Returns true if the specified shape consists solely of straight line
+     * segments and has at least one vertex, false otherwise.
+     */
+    static boolean isPolygonal(Shape shape)
+    {
+        double[] coords = new double[6];
+        PathIterator iterator = shape.getPathIterator(null);
+        if (iterator.isDone())
+            return false;
+
+        while (!iterator.isDone())
+        {
+            switch (iterator.currentSegment(coords))
+            {
+            case PathIterator.SEG_QUADTO:
+            case PathIterator.SEG_CUBICTO:
+                return false;
+            }
+            iterator.next();
+        }
+        return true;
+    }
+
+    /**
+     * Records the line with the specified coordinates with the current color
+     * and stroke width.
+     */
+    void renderLine(double x1, double y1, double x2, double y2)
+    {
+        acquireBatch();
+        batch.recorder.record(delegate.getTransform(), x1, y1, x2, y2, (Color) delegate.getPaint(), getLineWidth(), null);
+    }
+
+    /***************************************************************************
+     * INTERCEPTED METHODS                                                     *
+     **************************************************************************/
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2)
+    {
+        if (!canRender())
+        {
+            flush();
+            delegate.drawLine(x1, y1, x2, y2);
+            return;
+        }
+
+        renderLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints)
+    {
+        if (!canRender())
+        {
+            flush();
+            delegate.drawPolyline(xPoints, yPoints, nPoints);
+            return;
+        }
+
+        for (int index = 1; index < nPoints; index++)
+            renderLine(xPoints[index - 1], yPoints[index - 1], xPoints[index], yPoints[index]);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints)
+    {
+        if (!canRender())
+        {
+            flush();
+            delegate.drawPolygon(xPoints, yPoints, nPoints);
+            return;
+        }
+
+        drawPolyline(xPoints, yPoints, nPoints);
+        if (nPoints > 1)
+            renderLine(xPoints[nPoints - 1], yPoints[nPoints - 1], xPoints[0], yPoints[0]);
+    }
+
+    @Override
+    public void draw(Shape shape)
+    {
+        if (!canRender() || !isPolygonal(shape))
+        {
+            flush();
+            delegate.draw(shape);
+            return;
+        }
+
+        acquireBatch();
+        batch.recorder.record(delegate.getTransform(), shape, (Color) delegate.getPaint(), getLineWidth(), null);
+    }
+
+    @Override
+    public void setComposite(Composite composite)
+    {
+        flush();
+        delegate.setComposite(composite);
+    }
+
+    @Override
+    public void setPaintMode()
+    {
+        flush();
+        delegate.setPaintMode();
+    }
+
+    @Override
+    public void setXORMode(Color color)
+    {
+        flush();
+        delegate.setXORMode(color);
+    }
+
+    @Override
+    public void clip(Shape shape)
+    {
+        flush();
+        delegate.clip(shape);
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height)
+    {
+        flush();
+        delegate.clipRect(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height)
+    {
+        flush();
+        delegate.setClip(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(Shape clip)
+    {
+        flush();
+        delegate.setClip(clip);
+    }
+
+    @Override
+    public Graphics create()
+    {
+        return new BatchingGraphics2D((Graphics2D) delegate.create(), batch);
+    }
+
+    @Override
+    public void dispose()
+    {
+        flush();
+        delegate.dispose();
+    }
+
+    /***************************************************************************
+     * FLUSHING DRAWING METHODS                                                *
+     **************************************************************************/
+
+    @Override
+    public void fill(Shape shape)
+    {
+        flush();
+        delegate.fill(shape);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector glyphs, float x, float y)
+    {
+        flush();
+        delegate.drawGlyphVector(glyphs, x, y);
+    }
+
+    @Override
+    public void drawString(String text, int x, int y)
+    {
+        flush();
+        delegate.drawString(text, x, y);
+    }
+
+    @Override
+    public void drawString(String text, float x, float y)
+    {
+        flush();
+        delegate.drawString(text, x, y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y)
+    {
+        flush();
+        delegate.drawString(iterator, x, y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y)
+    {
+        flush();
+        delegate.drawString(iterator, x, y);
+    }
+
+    @Override
+    public boolean drawImage(Image image, AffineTransform transform, ImageObserver observer)
+    {
+        flush();
+        return delegate.drawImage(image, transform, observer);
+    }
+
+    @Override
+    public void drawImage(BufferedImage image, BufferedImageOp op, int x, int y)
+    {
+        flush();
+        delegate.drawImage(image, op, x, y);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage image, AffineTransform transform)
+    {
+        flush();
+        delegate.drawRenderedImage(image, transform);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage image, AffineTransform transform)
+    {
+        flush();
+        delegate.drawRenderableImage(image, transform);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, ImageObserver observer)
+    {
+        flush();
+        return delegate.drawImage(image, x, y, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, int width, int height, ImageObserver observer)
+    {
+        flush();
+        return delegate.drawImage(image, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, Color background, ImageObserver observer)
+    {
+        flush();
+        return delegate.drawImage(image, x, y, background, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image image,
+            int x,
+            int y,
+            int width,
+            int height,
+            Color background,
+            ImageObserver observer
+            )
+    {
+        flush();
+        return delegate.drawImage(image, x, y, width, height, background, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image image,
+            int dx1,
+            int dy1,
+            int dx2,
+            int dy2,
+            int sx1,
+            int sy1,
+            int sx2,
+            int sy2,
+            ImageObserver observer
+            )
+    {
+        flush();
+        return delegate.drawImage(image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image image,
+            int dx1,
+            int dy1,
+            int dx2,
+            int dy2,
+            int sx1,
+            int sy1,
+            int sx2,
+            int sy2,
+            Color background,
+            ImageObserver observer
+            )
+    {
+        flush();
+        return delegate.drawImage(image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, background, observer);
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy)
+    {
+        flush();
+        delegate.copyArea(x, y, width, height, dx, dy);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height)
+    {
+        flush();
+        delegate.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height)
+    {
+        flush();
+        delegate.clearRect(x, y, width, height);
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight)
+    {
+        flush();
+        delegate.drawRoundRect(x, y, width, height, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight)
+    {
+        flush();
+        delegate.fillRoundRect(x, y, width, height, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height)
+    {
+        flush();
+        delegate.drawOval(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height)
+    {
+        flush();
+        delegate.fillOval(x, y, width, height);
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle)
+    {
+        flush();
+        delegate.drawArc(x, y, width, height, startAngle, arcAngle);
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle)
+    {
+        flush();
+        delegate.fillArc(x, y, width, height, startAngle, arcAngle);
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints)
+    {
+        flush();
+        delegate.fillPolygon(xPoints, yPoints, nPoints);
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    /**
+     * Returns the graphics context to which this graphics context draws.
+     */
+    public Graphics2D getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public boolean hit(Rectangle rectangle, Shape shape, boolean onStroke)
+    {
+        return delegate.hit(rectangle, shape, onStroke);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration()
+    {
+        return delegate.getDeviceConfiguration();
+    }
+
+    @Override
+    public Composite getComposite()
+    {
+        return delegate.getComposite();
+    }
+
+    @Override
+    public Paint getPaint()
+    {
+        return delegate.getPaint();
+    }
+
+    @Override
+    public void setPaint(Paint paint)
+    {
+        delegate.setPaint(paint);
+    }
+
+    @Override
+    public Color getColor()
+    {
+        return delegate.getColor();
+    }
+
+    @Override
+    public void setColor(Color color)
+    {
+        delegate.setColor(color);
+    }
+
+    @Override
+    public Stroke getStroke()
+    {
+        return delegate.getStroke();
+    }
+
+    @Override
+    public void setStroke(Stroke stroke)
+    {
+        delegate.setStroke(stroke);
+    }
+
+    @Override
+    public Color getBackground()
+    {
+        return delegate.getBackground();
+    }
+
+    @Override
+    public void setBackground(Color color)
+    {
+        delegate.setBackground(color);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key key)
+    {
+        return delegate.getRenderingHint(key);
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key key, Object value)
+    {
+        delegate.setRenderingHint(key, value);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints()
+    {
+        return delegate.getRenderingHints();
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints)
+    {
+        delegate.setRenderingHints(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints)
+    {
+        delegate.addRenderingHints(hints);
+    }
+
+    @Override
+    public AffineTransform getTransform()
+    {
+        return delegate.getTransform();
+    }
+
+    @Override
+    public void setTransform(AffineTransform transform)
+    {
+        delegate.setTransform(transform);
+    }
+
+    @Override
+    public void transform(AffineTransform transform)
+    {
+        delegate.transform(transform);
+    }
+
+    @Override
+    public void translate(int x, int y)
+    {
+        delegate.translate(x, y);
+    }
+
+    @Override
+    public void translate(double x, double y)
+    {
+        delegate.translate(x, y);
+    }
+
+    @Override
+    public void rotate(double theta)
+    {
+        delegate.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y)
+    {
+        delegate.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double x, double y)
+    {
+        delegate.scale(x, y);
+    }
+
+    @Override
+    public void shear(double x, double y)
+    {
+        delegate.shear(x, y);
+    }
+
+    @Override
+    public Shape getClip()
+    {
+        return delegate.getClip();
+    }
+
+    @Override
+    public Rectangle getClipBounds()
+    {
+        return delegate.getClipBounds();
+    }
+
+    @Override
+    public Font getFont()
+    {
+        return delegate.getFont();
+    }
+
+    @Override
+    public void setFont(Font font)
+    {
+        delegate.setFont(font);
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font font)
+    {
+        return delegate.getFontMetrics(font);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext()
+    {
+        return delegate.getFontRenderContext();
+    }
+}
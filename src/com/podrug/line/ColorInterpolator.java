@@ -0,0 +1,159 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+/**
+ * Interpolates an ARGB color linearly along the major axis of a line.
+ *
+ * The components are kept as 16.16 fixed-point integers. The value at the
+ * first sample is calculated once per line; every following sample only adds
+ * the per-pixel step of each component multiplied by the distance to the
+ * previous sample along the major axis.
+ */
+final class ColorInterpolator
+{
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The number of bits used for the fraction of the color components.
+     */
+    static final int FRACTION_BITS = 16;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    int startColor;
+    int endColor;
+    double start;
+    double length;
+    boolean started;
+    int position;
+
+    int alpha;
+    int red;
+    int green;
+    int blue;
+    int alphaStep;
+    int redStep;
+    int greenStep;
+    int blueStep;
+
+    /**
+     * Prepares the interpolation between the specified ARGB values for a line
+     * whose end points have the specified coordinates along the major axis.
+     */
+    void setup(int startColor, int endColor, double start, double end)
+    {
+        this.startColor = startColor;
+        this.endColor = endColor;
+        this.start = start;
+
+        // Lines shorter than a pixel are treated as a pixel long to keep the
+        // steps within the range of the components.
+        //
+
+        length = end - start;
+        if (Math.abs(length) < 1)
+            length = (length < 0) ? -1 : 1;
+
+        alphaStep = step(24);
+        redStep = step(16);
+        greenStep = step(8);
+        blueStep = step(0);
+        started = false;
+    }
+
+    /**
+     * Returns the ARGB value of the sample at the specified pixel coordinate
+     * along the major axis.
+     */
+    int colorAt(int position)
+    {
+        if (!started)
+        {
+            // Calculate the components at the center of the first sample.
+            //
+
+            double t = (position + 0.5 - start) / length;
+            t = Math.max(0, Math.min(t, 1));
+
+            alpha = initial(24, t);
+            red = initial(16, t);
+            green = initial(8, t);
+            blue = initial(0, t);
+            started = true;
+        }
+        else if (position != this.position)
+        {
+            int delta = position - this.position;
+            alpha += alphaStep * delta;
+            red += redStep * delta;
+            green += greenStep * delta;
+            blue += blueStep * delta;
+        }
+
+        this.position = position;
+
+        return (clamp(alpha) << 24)
+                | (clamp(red) << 16)
+                | (clamp(green) << 8)
+                | clamp(blue);
+    }
+
+    /**
+     * Returns the step per pixel of the component at the specified bit offset.
+     */
+    int step(int shift)
+    {
+        int delta = ((endColor >>> shift) & 0xFF) - ((startColor >>> shift) & 0xFF);
+        return (int) Math.round((delta << FRACTION_BITS) / length);
+    }
+
+    /**
+     * Returns the value of the component at the specified bit offset at the
+     * specified point of the interpolation.
+     */
+    int initial(int shift, double t)
+    {
+        int from = (startColor >>> shift) & 0xFF;
+        int to = (endColor >>> shift) & 0xFF;
+        return (int) Math.round((from + (to - from) * t) * (1 << FRACTION_BITS));
+    }
+
+    /**
+     * Converts the specified fixed-point component to an integer between 0 and
+     * 255 inclusive.
+     */
+    static int clamp(int component)
+    {
+        if (component < 0)
+            return 0;
+        else if (component > (0xFF << FRACTION_BITS))
+            return 0xFF;
+        return component >>> FRACTION_BITS;
+    }
+}
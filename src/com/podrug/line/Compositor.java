@@ -0,0 +1,152 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import com.podrug.line.RasterSampler.Layout;
+import com.podrug.line.util.ColorMath;
+
+/**
+ * Composites non-premultiplied ARGB samples over destination pixels of a
+ * specific layout using the SrcOver rule and a constant extra alpha.
+ *
+ * The premultiplied source is cached, so consecutive samples of the same color
+ * only pay for the blending itself.
+ */
+final class Compositor
+{
+    final Layout layout;
+    int extraAlpha;
+
+    int sourceColor;
+    int source;
+
+    /**
+     * Creates a compositor for destination pixels of the specified layout.
+     */
+    Compositor(Layout layout)
+    {
+        if (layout == null)
+            throw new IllegalArgumentException("The layout cannot be null.");
+
+        this.layout = layout;
+        this.extraAlpha = ColorMath.MAX;
+    }
+
+    /**
+     * Prepares the compositing of the specified ARGB value and returns its
+     * alpha scaled by the extra alpha. If the returned alpha is 0, the
+     * destination remains unchanged; if it is 255, the value replaces the
+     * destination in every layout; otherwise the destination pixels must be
+     * passed through {@link #blend(int)}.
+     */
+    int prepare(int argb)
+    {
+        int alpha = ColorMath.mul8(argb >>> 24, extraAlpha);
+        if (alpha != 0 && alpha != ColorMath.MAX && argb != sourceColor)
+        {
+            source = ColorMath.premultiply(ColorMath.withAlpha(argb, alpha));
+            sourceColor = argb;
+        }
+        return alpha;
+    }
+
+    /**
+     * Returns the result of compositing the last prepared value over the
+     * specified destination pixel.
+     */
+    int blend(int dst)
+    {
+        switch (layout)
+        {
+        case ARGB:
+            return ColorMath.srcOver(dst, source);
+        case ARGB_PRE:
+            return ColorMath.srcOverPremultiplied(dst, source);
+        default:
+            return ColorMath.srcOverPremultiplied(dst | ColorMath.ALPHA_MASK, source);
+        }
+    }
+
+    /**
+     * Composites the specified ARGB value, whose alpha has been returned by
+     * {@link #prepare(int)}, into the specified number of consecutive pixels
+     * of the specified array starting at the specified index.
+     */
+    void composite(int[] data, int index, int length, int argb, int alpha)
+    {
+        int end = index + length;
+        if (alpha == ColorMath.MAX)
+        {
+            // Opaque samples replace the destination pixels in every layout.
+            //
+
+            if (length == 1)
+                data[index] = argb;
+            else
+                Arrays.fill(data, index, end, argb);
+        }
+        else if (alpha != 0)
+        {
+            for (; index < end; index++)
+                data[index] = blend(data[index]);
+        }
+    }
+
+    /**
+     * Composites the specified ARGB value, whose alpha has been returned by
+     * {@link #prepare(int)}, into the specified number of consecutive pixels
+     * of the specified buffer starting at the specified index.
+     */
+    void composite(IntBuffer data, int index, int length, int argb, int alpha)
+    {
+        int end = index + length;
+        if (alpha == ColorMath.MAX)
+        {
+            for (; index < end; index++)
+                data.put(index, argb);
+        }
+        else if (alpha != 0)
+        {
+            for (; index < end; index++)
+                data.put(index, blend(data.get(index)));
+        }
+    }
+
+    float getExtraAlpha()
+    {
+        return extraAlpha / (float) ColorMath.MAX;
+    }
+
+    void setExtraAlpha(float extraAlpha)
+    {
+        if (extraAlpha < 0 || extraAlpha > 1)
+            throw new IllegalArgumentException("The extra alpha must be between 0 and 1 inclusive.");
+
+        this.extraAlpha = Math.round(extraAlpha * ColorMath.MAX);
+        this.sourceColor = 0;
+    }
+}
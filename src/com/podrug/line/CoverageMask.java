@@ -0,0 +1,301 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * This class implements a coverage mask which records only whether a pixel is
+ * covered by a line or not. The mask is stored as a packed array of bits, one
+ * per pixel, with every row occupying a whole number of 64 bit words.
+ * <p>
+ * Compared to an ARGB buffer the mask uses 32 times less memory and it can be
+ * combined with other masks a word at a time. The mask can be composited into
+ * an ARGB buffer later on.
+ */
+public class CoverageMask
+{
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The binary logarithm of the number of bits in a word of the mask.
+     */
+    static final int WORD_SHIFT = 6;
+
+    /**
+     * The mask used to extract the index of a bit within a word of the mask.
+     */
+    static final int BIT_MASK = Long.SIZE - 1;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final int width;
+    final int height;
+    final int stride;
+    final long[] words;
+
+    /**
+     * Creates an empty mask with the specified dimensions.
+     */
+    public CoverageMask(int width, int height)
+    {
+        if (width < 0 || height < 0)
+            throw new IllegalArgumentException("The dimensions cannot be negative.");
+
+        this.width = width;
+        this.height = height;
+        this.stride = (width + BIT_MASK) >>> WORD_SHIFT;
+        this.words = new long[stride * height];
+    }
+
+    /**
+     * Returns true if the pixel with the specified coordinates is covered,
+     * false otherwise. Pixels outside the mask are never covered.
+     */
+    public boolean get(int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return false;
+
+        return (words[y * stride + (x >>> WORD_SHIFT)] & (1L << (x & BIT_MASK))) != 0;
+    }
+
+    /**
+     * Marks the pixel with the specified coordinates as covered. Pixels
+     * outside the mask are ignored.
+     */
+    public void set(int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return;
+
+        words[y * stride + (x >>> WORD_SHIFT)] |= 1L << (x & BIT_MASK);
+    }
+
+    /**
+     * Marks the horizontal span of the specified length starting at the
+     * specified coordinates as covered. The part of the span outside the mask
+     * is ignored.
+     */
+    public void setSpan(int x, int y, int length)
+    {
+        if (y < 0 || y >= height)
+            return;
+
+        int first = Math.max(x, 0);
+        int last = Math.min(x + length, width) - 1;
+        if (first > last)
+            return;
+
+        // Fill the words which are covered completely and mask out the bits
+        // before the span in the first word and after the span in the last
+        // word.
+        //
+
+        int row = y * stride;
+        int firstWord = row + (first >>> WORD_SHIFT);
+        int lastWord = row + (last >>> WORD_SHIFT);
+        long firstMask = -1L << (first & BIT_MASK);
+        long lastMask = -1L >>> (BIT_MASK - (last & BIT_MASK));
+
+        if (firstWord == lastWord)
+        {
+            words[firstWord] |= firstMask & lastMask;
+            return;
+        }
+
+        words[firstWord] |= firstMask;
+        for (int index = firstWord + 1; index < lastWord; index++)
+            words[index] = -1L;
+        words[lastWord] |= lastMask;
+    }
+
+    /**
+     * Marks all pixels of the mask as not covered.
+     */
+    public void clear()
+    {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * Marks every pixel which is covered in the specified mask as covered in
+     * this mask as well. Both masks must have the same dimensions.
+     */
+    public void union(CoverageMask other)
+    {
+        checkDimensions(other);
+
+        for (int index = 0; index < words.length; index++)
+            words[index] |= other.words[index];
+    }
+
+    /**
+     * Marks every pixel which is not covered in the specified mask as not
+     * covered in this mask as well. Both masks must have the same dimensions.
+     */
+    public void intersect(CoverageMask other)
+    {
+        checkDimensions(other);
+
+        for (int index = 0; index < words.length; index++)
+            words[index] &= other.words[index];
+    }
+
+    /**
+     * Returns the number of covered pixels.
+     */
+    public long popcount()
+    {
+        long count = 0;
+        for (int index = 0; index < words.length; index++)
+            count += Long.bitCount(words[index]);
+        return count;
+    }
+
+    /**
+     * Returns the smallest rectangle which contains all covered pixels or an
+     * empty rectangle if no pixel is covered.
+     */
+    public Rectangle getBounds()
+    {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * stride;
+            for (int index = 0; index < stride; index++)
+            {
+                long word = words[row + index];
+                if (word == 0)
+                    continue;
+
+                int base = index << WORD_SHIFT;
+                minX = Math.min(minX, base + Long.numberOfTrailingZeros(word));
+                maxX = Math.max(maxX, base + BIT_MASK - Long.numberOfLeadingZeros(word));
+                minY = Math.min(minY, y);
+                maxY = y;
+            }
+        }
+
+        if (maxY < 0)
+            return new Rectangle();
+
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Stores the specified ARGB value in every pixel of the specified buffer
+     * which is covered in the mask. The buffer is addressed with the specified
+     * offset of the top-left pixel and the specified number of elements per
+     * row.
+     */
+    public void fill(int[] data, int offset, int scanline, int argb)
+    {
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * stride;
+            int pixelRow = offset + y * scanline;
+            for (int index = 0; index < stride; index++)
+            {
+                long word = words[row + index];
+                int base = pixelRow + (index << WORD_SHIFT);
+                while (word != 0)
+                {
+                    data[base + Long.numberOfTrailingZeros(word)] = argb;
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an ARGB image with the dimensions of the mask in which the
+     * covered pixels have the specified color and all other pixels are
+     * transparent.
+     */
+    public BufferedImage toImage(Color color)
+    {
+        BufferedImage image = new BufferedImage(
+                Math.max(width, 1),
+                Math.max(height, 1),
+                BufferedImage.TYPE_INT_ARGB
+                );
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        fill(data, 0, image.getWidth(), color.getRGB());
+        return image;
+    }
+
+    /**
+     * Throws an exception if the specified mask doesn't have the dimensions
+     * of this mask.
+     */
+    void checkDimensions(CoverageMask other)
+    {
+        if (other.width != width || other.height != height)
+            throw new IllegalArgumentException("The masks must have the same dimensions.");
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Returns the number of words per row of the mask.
+     */
+    public int getStride()
+    {
+        return stride;
+    }
+
+    /**
+     * Returns the words of the mask. The pixel (x, y) is stored in the bit
+     * {@code x % 64} of the word {@code y * stride + x / 64}.
+     */
+    public long[] getWords()
+    {
+        return words;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImageOp;
+
+/**
+ * This class implements a sampler which records the samples of lines in a
+ * {@link CoverageMask} instead of an ARGB buffer. The samples are stored at
+ * their absolute positions, so lines can be accumulated in the same mask.
+ */
+public class CoverageSampler extends DirectSampler
+{
+    CoverageMask mask;
+
+    /**
+     * Creates a sampler which records the samples in the specified mask.
+     */
+    public CoverageSampler(CoverageMask mask)
+    {
+        setMask(mask);
+    }
+
+    /**
+     * Draws the whole mask in the stroke color to the specified graphics
+     * context at the specified position.
+     */
+    @Override
+    public void drawBuffer(Graphics2D graphics, BufferedImageOp op, int x, int y)
+    {
+        graphics.drawImage(mask.toImage(strokeColor), op, x, y);
+    }
+
+    /**
+     * Marks the pixel as covered; the color is ignored.
+     */
+    @Override
+    public void sample(int x, int y, int argb)
+    {
+        mask.set(bufferX + x, bufferY + y);
+    }
+
+    /**
+     * Marks the span as covered; the color is ignored.
+     */
+    @Override
+    public void sampleSpan(int x, int y, int length, int argb)
+    {
+        mask.setSpan(bufferX + x, bufferY + y, length);
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public CoverageMask getMask()
+    {
+        return mask;
+    }
+
+    public void setMask(CoverageMask mask)
+    {
+        if (mask == null)
+            throw new IllegalArgumentException("The mask cannot be null.");
+
+        this.mask = mask;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImageOp;
+
+/**
+ * The base class of the samplers which write the samples of lines directly
+ * into their destination instead of a buffer. The samples are written at
+ * their absolute positions, so the bounds of a line's buffer are only used to
+ * translate them.
+ */
+abstract class DirectSampler extends LineSampler
+{
+    /**
+     * Records the position of the line's bounding box; no buffer is allocated.
+     */
+    @Override
+    public void setBufferBounds(int x, int y, int width, int height)
+    {
+        bufferX = x;
+        bufferY = y;
+    }
+
+    /**
+     * Does nothing since no buffer is allocated.
+     */
+    @Override
+    public void setBufferDimensions(int width, int height)
+    {
+    }
+
+    /**
+     * Does nothing since the samples are written directly into the
+     * destination.
+     */
+    @Override
+    public void drawBuffer(Graphics2D graphics, BufferedImageOp op, int x, int y)
+    {
+    }
+}
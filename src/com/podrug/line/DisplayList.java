@@ -0,0 +1,505 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.podrug.line.LineRenderer.Stipple;
+import com.podrug.line.util.FPMath;
+
+/**
+ * This class stores lines which have already been transformed to device
+ * coordinates and converted to the fixed-point representation used by the
+ * rasterizer, so they can be rendered many times without walking, validating
+ * and transforming the original shapes again.
+ * <p>
+ * The segments and their styles are stored in primitive arrays. A display
+ * list is created by a {@link DisplayListRecorder}, can be replayed onto any
+ * sampler or graphics context with an additional translation by whole pixels
+ * and can be written to and read from a binary stream.
+ */
+public class DisplayList
+{
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The first 4 bytes of a serialized display list.
+     */
+    static final int MAGIC = 0x444C5354;
+
+    /**
+     * The version of the serialized format.
+     */
+    static final int VERSION = 1;
+
+    // The layout of the segments: the fixed-point end points and slope in the
+    // long array, the bounding box, the style index and the flags in the int
+    // array.
+    //
+
+    static final int SEGMENT_LONGS = 5;
+    static final int SEGMENT_INTS = 6;
+
+    // The layout of the styles: the ARGB color, the width in pixels and the
+    // stipple, if any.
+    //
+
+    static final int STYLE_INTS = 6;
+
+    static final int X_MAJOR = 1;
+    static final int REVERSE_X = 2;
+    static final int REVERSE_Y = 4;
+    static final int STEPPER = 8;
+    static final int FIRST = 16;
+    static final int ALL_FLAGS = X_MAJOR | REVERSE_X | REVERSE_Y | STEPPER | FIRST;
+
+    /**
+     * The number of values for which space is allocated up front when an
+     * array is read; larger arrays grow while they are read, so a corrupt
+     * count fails on the end of the data instead of allocating its memory.
+     */
+    static final int READ_CHUNK = 4096;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    long[] points = new long[16 * SEGMENT_LONGS];
+    int[] bounds = new int[16 * SEGMENT_INTS];
+    int numSegments;
+
+    int[] styles = new int[4 * STYLE_INTS];
+    int numStyles;
+
+    Color[] colors = new Color[0];
+    Stipple[] stipples = new Stipple[0];
+    int numPrepared;
+
+    /**
+     * Creates an empty display list.
+     */
+    public DisplayList()
+    {
+    }
+
+    /**
+     * Removes all segments and styles from the display list.
+     */
+    public void clear()
+    {
+        numSegments = 0;
+        numStyles = 0;
+        numPrepared = 0;
+    }
+
+    /**
+     * Renders the lines of the display list to the specified sampler. The
+     * lines are translated by the specified number of pixels and the stroke
+     * color of the sampler is replaced by the recorded colors while replaying.
+     */
+    public void replay(LineSampler target, int dx, int dy)
+    {
+        replay(LineRenderer.rasterizer, target, dx, dy);
+    }
+
+    /**
+     * Renders the lines of the display list to the specified sampler with the
+     * specified rasterizer like {@link #replay(LineSampler, int, int)}.
+     */
+    public void replay(LineRasterizer rasterizer, LineSampler target, int dx, int dy)
+    {
+        if (rasterizer == null)
+            throw new IllegalArgumentException("The rasterizer cannot be null.");
+        if (target == null)
+            throw new IllegalArgumentException("The sampler cannot be null.");
+
+        Color strokeColor = target.getStrokeColor();
+        prepareStyles();
+
+        int style = -1;
+        for (int index = 0; index < numSegments; index++)
+        {
+            int current = bounds[index * SEGMENT_INTS + 4];
+            if (current != style)
+            {
+                style = current;
+                target.setStrokeColor(colors[style]);
+            }
+
+            loadSegment(rasterizer, index, dx, dy);
+            rasterizer.rasterize(target, stipples[style]);
+        }
+
+        target.setStrokeColor(strokeColor);
+    }
+
+    /**
+     * Renders the lines of the display list to the specified graphics context.
+     * The lines are in device coordinates, so the transform of the graphics
+     * context is ignored; they are translated by the specified number of
+     * pixels instead.
+     */
+    public void replay(Graphics2D graphics, int dx, int dy)
+    {
+        if (graphics == null)
+            throw new IllegalArgumentException("The graphics context cannot be null.");
+
+        AffineTransform transform = graphics.getTransform();
+        graphics.setTransform(LineRenderer.identity);
+        prepareStyles();
+
+        LineRasterizer rasterizer = LineRenderer.rasterizer;
+        LineSampler sampler = rasterizer.sampler;
+        for (int index = 0; index < numSegments; index++)
+        {
+            int style = bounds[index * SEGMENT_INTS + 4];
+            sampler.setStrokeColor(colors[style]);
+
+            loadSegment(rasterizer, index, dx, dy);
+            rasterizer.rasterize(sampler, stipples[style]);
+            sampler.drawBuffer(graphics, null, sampler.bufferX, sampler.bufferY);
+        }
+
+        graphics.setTransform(transform);
+    }
+
+    /**
+     * Returns the smallest rectangle which contains all pixels the lines of
+     * the display list can produce, or an empty rectangle if the display list
+     * is empty.
+     */
+    public Rectangle getBounds()
+    {
+        Rectangle result = new Rectangle();
+        for (int index = 0; index < numSegments; index++)
+        {
+            int offset = index * SEGMENT_INTS;
+            int width = styles[bounds[offset + 4] * STYLE_INTS + 1];
+            boolean xMajor = (bounds[offset + 5] & X_MAJOR) != 0;
+
+            Rectangle segment = new Rectangle(
+                    bounds[offset],
+                    bounds[offset + 1],
+                    bounds[offset + 2] + (!xMajor ? (width - 1) : 0),
+                    bounds[offset + 3] + (xMajor ? (width - 1) : 0)
+                    );
+
+            if (index == 0)
+                result = segment;
+            else
+                result.add(segment);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the display list to the specified output.
+     */
+    public void writeTo(DataOutput output) throws IOException
+    {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+
+        output.writeInt(numStyles);
+        for (int index = 0; index < numStyles * STYLE_INTS; index++)
+            output.writeInt(styles[index]);
+
+        output.writeInt(numSegments);
+        for (int index = 0; index < numSegments * SEGMENT_LONGS; index++)
+            output.writeLong(points[index]);
+        for (int index = 0; index < numSegments * SEGMENT_INTS; index++)
+            output.writeInt(bounds[index]);
+    }
+
+    /**
+     * Reads a display list written by {@link #writeTo(DataOutput)} from the
+     * specified input.
+     */
+    public static DisplayList readFrom(DataInput input) throws IOException
+    {
+        if (input.readInt() != MAGIC)
+            throw new IOException("The data is not a display list.");
+        if (input.readInt() != VERSION)
+            throw new IOException("The version of the display list is not supported.");
+
+        DisplayList list = new DisplayList();
+
+        int numStyles = input.readInt();
+        if (numStyles < 0 || numStyles > Integer.MAX_VALUE / STYLE_INTS)
+            throw new IOException("The number of styles is invalid.");
+
+        list.styles = readInts(input, numStyles * STYLE_INTS);
+        list.numStyles = numStyles;
+
+        for (int style = 0; style < numStyles; style++)
+        {
+            if (!isValidStyle(list.styles, style * STYLE_INTS))
+                throw new IOException("A style is invalid.");
+        }
+
+        int numSegments = input.readInt();
+        if (numSegments < 0 || numSegments > Integer.MAX_VALUE / SEGMENT_INTS)
+            throw new IOException("The number of segments is invalid.");
+
+        list.points = readLongs(input, numSegments * SEGMENT_LONGS);
+        list.bounds = readInts(input, numSegments * SEGMENT_INTS);
+        list.numSegments = numSegments;
+
+        for (int index = 0; index < numSegments; index++)
+        {
+            int offset = index * SEGMENT_INTS;
+            if (list.bounds[offset + 2] < 0 || list.bounds[offset + 3] < 0)
+                throw new IOException("The bounds of a segment are invalid.");
+
+            int style = list.bounds[offset + 4];
+            if (style < 0 || style >= numStyles)
+                throw new IOException("The style of a segment is invalid.");
+            if ((list.bounds[offset + 5] & ~ALL_FLAGS) != 0)
+                throw new IOException("The flags of a segment are invalid.");
+        }
+
+        return list;
+    }
+
+    /**
+     * Reads the specified number of ints from the specified input.
+     */
+    static int[] readInts(DataInput input, int length) throws IOException
+    {
+        int[] values = new int[Math.min(length, READ_CHUNK)];
+        for (int index = 0; index < length; index++)
+        {
+            if (index == values.length)
+                values = Arrays.copyOf(values, (int) Math.min(index * 2L, length));
+            values[index] = input.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Reads the specified number of longs from the specified input.
+     */
+    static long[] readLongs(DataInput input, int length) throws IOException
+    {
+        long[] values = new long[Math.min(length, READ_CHUNK)];
+        for (int index = 0; index < length; index++)
+        {
+            if (index == values.length)
+                values = Arrays.copyOf(values, (int) Math.min(index * 2L, length));
+            values[index] = input.readLong();
+        }
+        return values;
+    }
+
+    /**
+     * Returns true if the style starting at the specified index of the
+     * specified array can be rendered, false otherwise. The width cannot be
+     * negative and the factor and the length of a stipple must be usable by
+     * the rasterizer.
+     */
+    static boolean isValidStyle(int[] styles, int index)
+    {
+        if (styles[index + 1] < 0)
+            return false;
+
+        switch (styles[index + 2])
+        {
+        case 0:
+            return true;
+        case 1:
+            return styles[index + 4] >= 1 && styles[index + 5] >= 1 && styles[index + 5] <= 16;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Appends the line which has been set up by the specified rasterizer to
+     * the display list. If the line is the first one of a render call, the
+     * stipple is restarted when it is replayed.
+     */
+    void addSegment(LineRasterizer rasterizer, int style, boolean first)
+    {
+        if ((numSegments + 1) * SEGMENT_INTS > bounds.length)
+        {
+            int capacity = Math.max(numSegments * 2, 16);
+            points = Arrays.copyOf(points, capacity * SEGMENT_LONGS);
+            bounds = Arrays.copyOf(bounds, capacity * SEGMENT_INTS);
+        }
+
+        int index = numSegments * SEGMENT_LONGS;
+        points[index] = rasterizer.p1.x;
+        points[index + 1] = rasterizer.p1.y;
+        points[index + 2] = rasterizer.p2.x;
+        points[index + 3] = rasterizer.p2.y;
+        points[index + 4] = rasterizer.a;
+
+        int flags = (rasterizer.xMajor ? X_MAJOR : 0)
+                | (rasterizer.reverseX ? REVERSE_X : 0)
+                | (rasterizer.reverseY ? REVERSE_Y : 0)
+                | (rasterizer.stepper ? STEPPER : 0)
+                | (first ? FIRST : 0);
+
+        index = numSegments * SEGMENT_INTS;
+        bounds[index] = rasterizer.positionX;
+        bounds[index + 1] = rasterizer.positionY;
+        bounds[index + 2] = rasterizer.bufferWidth;
+        bounds[index + 3] = rasterizer.bufferHeight;
+        bounds[index + 4] = style;
+        bounds[index + 5] = flags;
+        numSegments++;
+    }
+
+    /**
+     * Returns the index of the style with the specified color, width and
+     * stipple, adding the style if it doesn't exist yet.
+     */
+    int addStyle(int argb, int width, Stipple stipple)
+    {
+        int pattern = (stipple != null) ? stipple.stipple : 0;
+        int factor = (stipple != null) ? stipple.factor : 0;
+        int length = (stipple != null) ? stipple.length : 0;
+        int stippled = (stipple != null) ? 1 : 0;
+
+        for (int style = numStyles - 1; style >= 0; style--)
+        {
+            int index = style * STYLE_INTS;
+            if (styles[index] == argb
+                    && styles[index + 1] == width
+                    && styles[index + 2] == stippled
+                    && styles[index + 3] == pattern
+                    && styles[index + 4] == factor
+                    && styles[index + 5] == length)
+                return style;
+        }
+
+        if ((numStyles + 1) * STYLE_INTS > styles.length)
+            styles = Arrays.copyOf(styles, Math.max(numStyles * 2, 4) * STYLE_INTS);
+
+        int index = numStyles * STYLE_INTS;
+        styles[index] = argb;
+        styles[index + 1] = width;
+        styles[index + 2] = stippled;
+        styles[index + 3] = pattern;
+        styles[index + 4] = factor;
+        styles[index + 5] = length;
+        return numStyles++;
+    }
+
+    /**
+     * Creates the colors and stipples of the styles which have been added
+     * since the last replay.
+     */
+    void prepareStyles()
+    {
+        if (colors.length < numStyles)
+        {
+            colors = Arrays.copyOf(colors, numStyles);
+            stipples = Arrays.copyOf(stipples, numStyles);
+        }
+
+        for (int style = numPrepared; style < numStyles; style++)
+        {
+            int index = style * STYLE_INTS;
+            colors[style] = new Color(styles[index], true);
+            stipples[style] = (styles[index + 2] != 0)
+                    ? new Stipple(styles[index + 3], styles[index + 4], styles[index + 5])
+                    : null;
+        }
+        numPrepared = numStyles;
+    }
+
+    /**
+     * Restores the state of the specified rasterizer for the segment with the
+     * specified index translated by the specified number of pixels. The
+     * standard form is derived from the translated end points the same way
+     * the rasterizer does.
+     */
+    void loadSegment(LineRasterizer rasterizer, int segment, int dx, int dy)
+    {
+        long offsetX = (long) dx << FPMath.FRACTION_BITS;
+        long offsetY = (long) dy << FPMath.FRACTION_BITS;
+
+        int index = segment * SEGMENT_LONGS;
+        rasterizer.p1.setLocation(points[index] + offsetX, points[index + 1] + offsetY);
+        rasterizer.p2.setLocation(points[index + 2] + offsetX, points[index + 3] + offsetY);
+        rasterizer.a = points[index + 4];
+
+        if (rasterizer.p2.x != rasterizer.p1.x)
+        {
+            rasterizer.b = -FPMath.ONE;
+            rasterizer.c = rasterizer.p1.y - FPMath.mul(rasterizer.a, rasterizer.p1.x);
+        }
+        else
+        {
+            rasterizer.b = 0;
+            rasterizer.c = rasterizer.p1.x;
+        }
+
+        index = segment * SEGMENT_INTS;
+        int flags = bounds[index + 5];
+        rasterizer.positionX = bounds[index] + dx;
+        rasterizer.positionY = bounds[index + 1] + dy;
+        rasterizer.bufferWidth = bounds[index + 2];
+        rasterizer.bufferHeight = bounds[index + 3];
+        rasterizer.width = styles[bounds[index + 4] * STYLE_INTS + 1];
+        rasterizer.xMajor = (flags & X_MAJOR) != 0;
+        rasterizer.reverseX = (flags & REVERSE_X) != 0;
+        rasterizer.reverseY = (flags & REVERSE_Y) != 0;
+        rasterizer.stepper = (flags & STEPPER) != 0;
+        rasterizer.gradientEnabled = false;
+
+        if ((flags & FIRST) != 0)
+            rasterizer.numSamples = 0;
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    /**
+     * Returns the number of segments in the display list.
+     */
+    public int getSegmentCount()
+    {
+        return numSegments;
+    }
+
+    /**
+     * Returns the number of distinct styles in the display list.
+     */
+    public int getStyleCount()
+    {
+        return numStyles;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+
+import com.podrug.line.LineRenderer.Stipple;
+
+/**
+ * Records lines into a {@link DisplayList} instead of rendering them. The
+ * lines are set up exactly like a {@link LineRasterizer} sets them up, using
+ * its current engine and decimation, so replaying the display list produces
+ * the same pixels as rendering the lines directly. By default, the rasterizer
+ * of {@link LineRenderer} is used.
+ * <p>
+ * Only solid colors are recorded; interpolated colors are not supported.
+ */
+public class DisplayListRecorder
+{
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final DisplayList list;
+    final LineRasterizer rasterizer;
+
+    /**
+     * Creates a recorder which records into a new display list.
+     */
+    public DisplayListRecorder()
+    {
+        this(new DisplayList());
+    }
+
+    /**
+     * Creates a recorder which appends to the specified display list.
+     */
+    public DisplayListRecorder(DisplayList list)
+    {
+        this(list, LineRenderer.rasterizer);
+    }
+
+    /**
+     * Creates a recorder which appends to the specified display list and sets
+     * the lines up with the engine and the decimation of the specified
+     * rasterizer.
+     */
+    public DisplayListRecorder(DisplayList list, LineRasterizer rasterizer)
+    {
+        if (list == null)
+            throw new IllegalArgumentException("The display list cannot be null.");
+        if (rasterizer == null)
+            throw new IllegalArgumentException("The rasterizer cannot be null.");
+
+        this.list = list;
+        this.rasterizer = rasterizer;
+    }
+
+    /**
+     * Records the specified path. The coordinates are transformed with the
+     * specified transform, if any, like the ones passed to
+     * {@link LineRenderer#render(LineSampler, AffineTransform, Shape, float, Stipple)}.
+     */
+    public void record(
+                AffineTransform transform,
+                Shape shape,
+                Color strokeColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        if (shape == null)
+            throw new IllegalArgumentException("The shape cannot be null.");
+        if (strokeColor == null)
+            throw new IllegalArgumentException("The stroke color cannot be null.");
+
+        double[] coords = new double[6];
+        PathIterator iterator = shape.getPathIterator(null);
+        while (!iterator.isDone())
+        {
+            switch (iterator.currentSegment(coords))
+            {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+            case PathIterator.SEG_CLOSE:
+                break;
+            default:
+                throw new IllegalArgumentException("The path doesn't consist solely of straight line segments.");
+            }
+            iterator.next();
+        }
+
+        // Decimated paths are iterated in device coordinates, the others are
+        // transformed segment by segment like the renderer does.
+        //
+
+        PathDecimator decimator = null;
+        if (rasterizer.canDecimate(strokeColor, null, stipple))
+        {
+            decimator = new PathDecimator(rasterizer, rasterizer.decimation, strokeWidth);
+            iterator = shape.getPathIterator(transform);
+            transform = null;
+        }
+        else
+            iterator = shape.getPathIterator(null);
+
+        int argb = strokeColor.getRGB();
+        double[] initial = new double[2];
+        double[] previous = new double[2];
+        boolean first = true;
+
+        iterator.currentSegment(coords);
+        initial[0] = coords[0];
+        initial[1] = coords[1];
+        previous[0] = coords[0];
+        previous[1] = coords[1];
+
+        while (!iterator.isDone())
+        {
+            int type = iterator.currentSegment(coords);
+            if (type == PathIterator.SEG_CLOSE)
+            {
+                coords[0] = initial[0];
+                coords[1] = initial[1];
+            }
+
+            if (type == PathIterator.SEG_LINETO || type == PathIterator.SEG_CLOSE)
+            {
+                if (decimator != null)
+                {
+                    int numSegments = decimator.add(previous[0], previous[1], coords[0], coords[1]);
+                    recordSegments(decimator, numSegments, argb, strokeWidth);
+                }
+                else
+                {
+                    recordLine(transform, previous[0], previous[1], coords[0], coords[1], argb, strokeWidth, stipple, first);
+                    first = false;
+                }
+            }
+
+            previous[0] = coords[0];
+            previous[1] = coords[1];
+            iterator.next();
+        }
+
+        if (decimator != null)
+            recordSegments(decimator, decimator.flush(), argb, strokeWidth);
+    }
+
+    /**
+     * Records the line with the specified coordinates. The coordinates are
+     * transformed with the specified transform, if any.
+     */
+    public void record(
+                AffineTransform transform,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                Color strokeColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        if (strokeColor == null)
+            throw new IllegalArgumentException("The stroke color cannot be null.");
+
+        recordLine(transform, x1, y1, x2, y2, strokeColor.getRGB(), strokeWidth, stipple, true);
+    }
+
+    /**
+     * Records the specified number of segments kept by the specified
+     * decimator. Decimated paths are never stippled, so the segments don't
+     * restart the stipple.
+     */
+    void recordSegments(PathDecimator decimator, int numSegments, int argb, float strokeWidth)
+    {
+        double[] segments = decimator.segments;
+        for (int index = 0; index < numSegments * 4; index += 4)
+        {
+            recordLine(
+                null,
+                segments[index],
+                segments[index + 1],
+                segments[index + 2],
+                segments[index + 3],
+                argb,
+                strokeWidth,
+                null,
+                false
+                );
+        }
+    }
+
+    /**
+     * Sets up the line with the specified coordinates and appends it to the
+     * display list.
+     */
+    void recordLine(
+            AffineTransform transform,
+            double x1,
+            double y1,
+            double x2,
+            double y2,
+            int argb,
+            float strokeWidth,
+            Stipple stipple,
+            boolean first
+            )
+    {
+        rasterizer.setupLine(transform, x1, y1, x2, y2, strokeWidth);
+        list.addSegment(rasterizer, list.addStyle(argb, rasterizer.width, stipple), first);
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public DisplayList getDisplayList()
+    {
+        return list;
+    }
+}
@@ -0,0 +1,1146 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+
+import com.podrug.line.LineRenderer.Decimation;
+import com.podrug.line.LineRenderer.Engine;
+import com.podrug.line.LineRenderer.IntersectionInfo;
+import com.podrug.line.LineRenderer.Point;
+import com.podrug.line.LineRenderer.Stipple;
+import com.podrug.line.util.FPMath;
+
+/**
+ * This class implements the line rasterizer described in {@link LineRenderer}
+ * together with the state it needs while rendering a line.
+ * <p>
+ * The static methods of {@link LineRenderer} share a single instance of this
+ * class. Every thread which renders lines concurrently with others, for
+ * example into a {@link SharedRaster}, must use its own instance; an instance
+ * must not be used by several threads at the same time.
+ */
+public class LineRasterizer
+{
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    Engine engine = Engine.PREDICATE;
+    Decimation decimation = Decimation.NONE;
+    final LineSampler sampler = new LineSampler();
+    int width;
+    final Point p1 = new Point();
+    final Point p2 = new Point();
+    boolean xMajor;
+    long a;
+    long b;
+    long c;
+    int positionX;
+    int positionY;
+    int bufferWidth;
+    int bufferHeight;
+    boolean reverseX;
+    boolean reverseY;
+    boolean stepper;
+    final ColorInterpolator gradient = new ColorInterpolator();
+    boolean gradientEnabled;
+
+    int numSamples;
+
+    /**
+     * Creates a rasterizer which uses the {@link Engine#PREDICATE predicate}
+     * engine and doesn't decimate paths.
+     */
+    public LineRasterizer()
+    {
+    }
+
+    /**
+     * Renders the specified path to the specified graphics context using the
+     * line rasterizer.
+     *
+     * The path should only consist of straight line segments.
+     */
+    public void render(
+            final Graphics2D graphics,
+            final Shape shape,
+            Color strokeColor,
+            float strokeWidth,
+            Stipple stipple
+            )
+    {
+        renderPath(graphics, null, null, shape, strokeColor, null, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the specified path to the specified graphics context using the
+     * line rasterizer. The color of each segment is interpolated between the
+     * colors of its end points; the colors are specified per vertex of the
+     * path in the order in which the vertices appear.
+     *
+     * The path should only consist of straight line segments.
+     */
+    public void render(
+            final Graphics2D graphics,
+            final Shape shape,
+            Color[] vertexColors,
+            float strokeWidth,
+            Stipple stipple
+            )
+    {
+        if (vertexColors == null)
+            throw new IllegalArgumentException("The vertex colors cannot be null.");
+
+        renderPath(graphics, null, null, shape, null, vertexColors, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the specified path to the specified sampler using the line
+     * rasterizer. The coordinates of the path are transformed with the
+     * specified transform, if any, before rasterization.
+     *
+     * The path should only consist of straight line segments.
+     */
+    public void render(
+            final LineSampler target,
+            final AffineTransform transform,
+            final Shape shape,
+            float strokeWidth,
+            Stipple stipple
+            )
+    {
+        if (target == null)
+            throw new IllegalArgumentException("The sampler cannot be null.");
+
+        renderPath(null, target, transform, shape, null, null, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the specified path to the specified sampler using the line
+     * rasterizer with colors interpolated per vertex as described in
+     * {@link #render(Graphics2D, Shape, Color[], float, Stipple)}.
+     */
+    public void render(
+            final LineSampler target,
+            final AffineTransform transform,
+            final Shape shape,
+            Color[] vertexColors,
+            float strokeWidth,
+            Stipple stipple
+            )
+    {
+        if (target == null)
+            throw new IllegalArgumentException("The sampler cannot be null.");
+        if (vertexColors == null)
+            throw new IllegalArgumentException("The vertex colors cannot be null.");
+
+        renderPath(null, target, transform, shape, null, vertexColors, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the line with the specified coordinates to the specified graphics
+     * context using the line rasterizer.
+     */
+    public void render(
+                Graphics2D graphics,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                Color strokeColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        // Reset the sample counter and render the line.
+        //
+
+        numSamples = 0;
+        renderLine(graphics, x1, y1, x2, y2, strokeColor, null, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the line with the specified coordinates to the specified graphics
+     * context using the line rasterizer. The color of the line is interpolated
+     * between the specified colors of the 1st and the 2nd end point.
+     */
+    public void render(
+                Graphics2D graphics,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                Color startColor,
+                Color endColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        if (endColor == null)
+            throw new IllegalArgumentException("The end color cannot be null.");
+
+        // Reset the sample counter and render the line.
+        //
+
+        numSamples = 0;
+        renderLine(graphics, x1, y1, x2, y2, startColor, endColor, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the line with the specified coordinates to the specified sampler
+     * using the line rasterizer. The coordinates are transformed with the
+     * specified transform, if any, before rasterization.
+     */
+    public void render(
+                LineSampler target,
+                AffineTransform transform,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        if (target == null)
+            throw new IllegalArgumentException("The sampler cannot be null.");
+
+        // Reset the sample counter and render the line.
+        //
+
+        numSamples = 0;
+        renderLine(target, transform, x1, y1, x2, y2, null, null, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the line with the specified coordinates to the specified sampler
+     * using the line rasterizer. The color of the line is interpolated between
+     * the specified colors of the 1st and the 2nd end point.
+     */
+    public void render(
+                LineSampler target,
+                AffineTransform transform,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                Color startColor,
+                Color endColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        if (target == null)
+            throw new IllegalArgumentException("The sampler cannot be null.");
+        if (startColor == null || endColor == null)
+            throw new IllegalArgumentException("The colors cannot be null.");
+
+        // Reset the sample counter and render the line.
+        //
+
+        numSamples = 0;
+        renderLine(target, transform, x1, y1, x2, y2, startColor, endColor, strokeWidth, stipple);
+    }
+
+    /**
+     * Renders the specified path either to the specified graphics context or,
+     * if no graphics context is specified, to the specified sampler. If vertex
+     * colors are specified, the stroke color is ignored.
+     */
+    void renderPath(
+            Graphics2D graphics,
+            LineSampler target,
+            AffineTransform transform,
+            Shape shape,
+            Color strokeColor,
+            Color[] vertexColors,
+            float strokeWidth,
+            Stipple stipple
+            )
+    {
+        double[] coords = new double[6];
+        int numVertices = 0;
+        PathIterator iterator = shape.getPathIterator(null);
+        while (!iterator.isDone())
+        {
+            switch (iterator.currentSegment(coords))
+            {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                numVertices++;
+                break;
+            case PathIterator.SEG_CLOSE:
+                break;
+            default:
+                throw new IllegalArgumentException("The path doesn't consist solely of straight line segments.");
+            }
+            iterator.next();
+        }
+
+        if (vertexColors != null && vertexColors.length < numVertices)
+            throw new IllegalArgumentException("A color must be specified for each vertex of the path.");
+
+        Color pathColor = (strokeColor != null || vertexColors != null) ? strokeColor : target.getStrokeColor();
+        if (canDecimate(pathColor, vertexColors, stipple))
+        {
+            renderDecimatedPath(graphics, target, transform, shape, strokeColor, strokeWidth);
+            return;
+        }
+
+        // Reset the sample counter.
+        //
+
+        numSamples = 0;
+
+        // Iterate and render each path segment.
+        //
+
+        iterator = shape.getPathIterator(null);
+        double[] initial = new double[2];
+        double[] previous = new double[2];
+        int vertex = 0;
+        int previousVertex = 0;
+
+        int type = iterator.currentSegment(coords);
+        initial[0] = coords[0];
+        initial[1] = coords[1];
+        previous[0] = coords[0];
+        previous[1] = coords[1];
+
+        while (!iterator.isDone())
+        {
+            type = iterator.currentSegment(coords);
+            int currentVertex = vertex;
+            switch (type)
+            {
+            case PathIterator.SEG_CLOSE:
+                coords[0] = initial[0];
+                coords[1] = initial[1];
+                currentVertex = 0;
+
+            case PathIterator.SEG_LINETO:
+                Color startColor = strokeColor;
+                Color endColor = null;
+                if (vertexColors != null)
+                {
+                    startColor = vertexColors[previousVertex];
+                    endColor = vertexColors[currentVertex];
+                }
+
+                if (graphics != null)
+                {
+                    renderLine(
+                        graphics,
+                        previous[0],
+                        previous[1],
+                        coords[0],
+                        coords[1],
+                        startColor,
+                        endColor,
+                        strokeWidth,
+                        stipple
+                        );
+                }
+                else
+                {
+                    renderLine(
+                        target,
+                        transform,
+                        previous[0],
+                        previous[1],
+                        coords[0],
+                        coords[1],
+                        startColor,
+                        endColor,
+                        strokeWidth,
+                        stipple
+                        );
+                }
+
+                break;
+            }
+
+            if (type != PathIterator.SEG_CLOSE)
+                vertex++;
+
+            previous[0] = coords[0];
+            previous[1] = coords[1];
+            previousVertex = currentVertex;
+            iterator.next();
+        }
+    }
+
+    /**
+     * Renders the specified path like {@link #renderPath} after passing its
+     * segments in device coordinates through a {@link PathDecimator}.
+     */
+    void renderDecimatedPath(
+            Graphics2D graphics,
+            LineSampler target,
+            AffineTransform transform,
+            Shape shape,
+            Color strokeColor,
+            float strokeWidth
+            )
+    {
+        // Set an identity transform to the graphics context, the path is
+        // transformed while iterating it.
+        //
+
+        AffineTransform graphicsTransform = null;
+        if (graphics != null)
+        {
+            graphicsTransform = graphics.getTransform();
+            graphics.setTransform(LineRenderer.identity);
+            sampler.setStrokeColor(strokeColor);
+            target = sampler;
+            transform = graphicsTransform;
+        }
+
+        numSamples = 0;
+
+        PathDecimator decimator = new PathDecimator(this, decimation, strokeWidth);
+        PathIterator iterator = shape.getPathIterator(transform);
+        double[] coords = new double[6];
+        double[] initial = new double[2];
+        double[] previous = new double[2];
+
+        iterator.currentSegment(coords);
+        initial[0] = coords[0];
+        initial[1] = coords[1];
+        previous[0] = coords[0];
+        previous[1] = coords[1];
+
+        while (!iterator.isDone())
+        {
+            int type = iterator.currentSegment(coords);
+            if (type == PathIterator.SEG_CLOSE)
+            {
+                coords[0] = initial[0];
+                coords[1] = initial[1];
+            }
+
+            if (type == PathIterator.SEG_LINETO || type == PathIterator.SEG_CLOSE)
+            {
+                int numSegments = decimator.add(previous[0], previous[1], coords[0], coords[1]);
+                renderSegments(graphics, target, decimator, numSegments, strokeWidth);
+            }
+
+            previous[0] = coords[0];
+            previous[1] = coords[1];
+            iterator.next();
+        }
+
+        renderSegments(graphics, target, decimator, decimator.flush(), strokeWidth);
+
+        if (graphics != null)
+            graphics.setTransform(graphicsTransform);
+    }
+
+    /**
+     * Renders the specified number of segments kept by the specified decimator
+     * either to the specified graphics context or, if no graphics context is
+     * specified, to the specified sampler.
+     */
+    void renderSegments(
+            Graphics2D graphics,
+            LineSampler target,
+            PathDecimator decimator,
+            int numSegments,
+            float strokeWidth
+            )
+    {
+        double[] segments = decimator.segments;
+        for (int index = 0; index < numSegments * 4; index += 4)
+        {
+            if (decimator.recorded)
+                renderRecorded(target, decimator.recorder);
+            else
+            {
+                renderLine(
+                    target,
+                    null,
+                    segments[index],
+                    segments[index + 1],
+                    segments[index + 2],
+                    segments[index + 3],
+                    null,
+                    null,
+                    strokeWidth,
+                    null
+                    );
+            }
+
+            if (graphics != null)
+                sampler.drawBuffer(graphics, null, sampler.bufferX, sampler.bufferY);
+        }
+    }
+
+    /**
+     * Renders the pixels of the current thin line which have been recorded by
+     * the specified recorder instead of rasterizing the line again.
+     */
+    void renderRecorded(LineSampler target, PathDecimator.PixelRecorder recorder)
+    {
+        target.setBufferBounds(positionX, positionY, bufferWidth, bufferHeight);
+        for (int index = 0; index < recorder.numPixels; index++)
+        {
+            renderSample(
+                target,
+                recorder.pixelsX[index] - positionX,
+                recorder.pixelsY[index] - positionY,
+                numSamples++,
+                null
+                );
+        }
+    }
+
+    void renderLine(
+                Graphics2D graphics,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                Color strokeColor,
+                Color endColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        // Set an identity transform to the graphics context, the end points
+        // are transformed manually.
+        //
+
+        AffineTransform transform = graphics.getTransform();
+        graphics.setTransform(LineRenderer.identity);
+
+        sampler.setStrokeColor(strokeColor);
+        renderLine(sampler, transform, x1, y1, x2, y2, strokeColor, endColor, strokeWidth, stipple);
+
+        sampler.drawBuffer(graphics, null, sampler.bufferX, sampler.bufferY);
+        graphics.setTransform(transform);
+    }
+
+    /**
+     * Rasterizes the line with the specified coordinates and passes the
+     * samples to the specified sampler. If an end color is specified, the
+     * color of the samples is interpolated between the start and the end
+     * color; otherwise, the stroke color of the sampler is used.
+     */
+    void renderLine(
+                LineSampler target,
+                AffineTransform transform,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                Color startColor,
+                Color endColor,
+                float strokeWidth,
+                Stipple stipple
+                )
+    {
+        setupLine(transform, x1, y1, x2, y2, strokeWidth);
+
+        // Prepare the interpolation of the color along the major axis.
+        //
+
+        gradientEnabled = endColor != null;
+        if (gradientEnabled)
+        {
+            gradient.setup(
+                    startColor.getRGB(),
+                    endColor.getRGB(),
+                    FPMath.toDouble(xMajor ? p1.x : p1.y),
+                    FPMath.toDouble(xMajor ? p2.x : p2.y)
+                    );
+        }
+
+        rasterize(target, stipple);
+    }
+
+    /**
+     * Transforms and classifies the line with the specified coordinates and
+     * stores its fixed-point representation, its standard form and its
+     * bounding box in the members of this class.
+     */
+    void setupLine(
+                AffineTransform transform,
+                double x1,
+                double y1,
+                double x2,
+                double y2,
+                float strokeWidth
+                )
+    {
+        if (width < 0)
+            throw new IllegalArgumentException("The width cannot be negative.");
+
+        // Transform the end points manually.
+        //
+
+        if (transform != null)
+        {
+            double tx1 = x1 * transform.getScaleX() + y1 * transform.getShearX()
+                            + transform.getTranslateX();
+            double ty1 = x1 * transform.getShearY() + y1 * transform.getScaleY()
+                            + transform.getTranslateY();
+            double tx2 = x2 * transform.getScaleX() + y2 * transform.getShearX()
+                    + transform.getTranslateX();
+            double ty2 = x2 * transform.getShearY() + y2 * transform.getScaleY()
+                        + transform.getTranslateY();
+
+            x1 = tx1;
+            y1 = ty1;
+            x2 = tx2;
+            y2 = ty2;
+        }
+
+        // Classify the line and correct the position for the requested width.
+        //
+
+        xMajor = Math.abs(x2 - x1) >= Math.abs(y2 - y1);
+        width = (int) Math.max(Math.round(strokeWidth), 1);
+
+        if (xMajor)
+        {
+            y1 -= (width - 1) / 2;
+            y2 -= (width - 1) / 2;
+        }
+        else
+        {
+            x1 -= (width - 1) / 2;
+            x2 -= (width - 1) / 2;
+        }
+
+        // Extract the bounding box, classify the line and push the end points
+        // 0.5 pixels to the right and to the bottom. Thus, a line which is
+        // coincident with the border between 2 pixel rows will highlight the
+        // bottom row.
+        //
+
+        if (engine == Engine.STEPPER)
+        {
+            x1 = snap(x1);
+            y1 = snap(y1);
+            x2 = snap(x2);
+            y2 = snap(y2);
+        }
+
+        double minX = Math.min(x1, x2);
+        double minY = Math.min(y1, y2);
+        double maxX = Math.max(x1, x2);
+        double maxY = Math.max(y1, y2);
+
+        double offset = 0;
+        p1.setLocation(FPMath.toFixed(x1 + offset), FPMath.toFixed(y1 + offset));
+        p2.setLocation(FPMath.toFixed(x2 + offset), FPMath.toFixed(y2 + offset));
+
+        // Extract the standard form.
+        //
+
+        if (p2.x != p1.x)
+        {
+            a = FPMath.div(p2.y - p1.y, p2.x - p1.x);
+            b = -FPMath.ONE;
+            c = p1.y - FPMath.mul(a, p1.x);
+        }
+        else
+        {
+            a = FPMath.ONE;
+            b = 0;
+            c = p1.x;
+        }
+
+        // Store the bounding box and the order in which the pixels are
+        // visited.
+        //
+
+        bufferWidth = (int) (Math.ceil(maxX) - Math.floor(minX)) + 1;
+        bufferHeight = (int) (Math.ceil(maxY) - Math.floor(minY)) + 1;
+        positionX = (int) Math.floor(minX) - 1;
+        positionY = (int) Math.floor(minY) - 1;
+        reverseX = x1 > x2;
+        reverseY = y1 > y2;
+        stepper = engine == Engine.STEPPER;
+    }
+
+    /**
+     * Rasterizes the line which has been set up by
+     * {@link #setupLine(AffineTransform, double, double, double, double, float)
+     * setupLine} and passes the samples to the specified sampler.
+     */
+    void rasterize(LineSampler target, Stipple stipple)
+    {
+        target.setBufferBounds(
+                positionX,
+                positionY,
+                bufferWidth + (!xMajor ? (width - 1) : 0),
+                bufferHeight + (xMajor ? (width - 1) : 0)
+                );
+
+        if (stepper)
+            stepLine(target, positionX, positionY, bufferWidth, bufferHeight, stipple);
+        else
+            scanLine(target, positionX, positionY, bufferWidth, bufferHeight, reverseX, reverseY, stipple);
+    }
+
+    /**
+     * Tests every pixel of the current line's bounding box against the
+     * "diamond exit" rule. The pixels are visited from the 1st towards the
+     * 2nd end point.
+     */
+    void scanLine(
+                LineSampler target,
+                int positionX,
+                int positionY,
+                int bufferWidth,
+                int bufferHeight,
+                boolean reverseX,
+                boolean reverseY,
+                Stipple stipple
+                )
+    {
+        int sampleY = 0;
+        int sampleLastY = bufferHeight;
+        int sampleStepY = 1;
+        if (reverseY)
+        {
+            sampleY = bufferHeight - 1;
+            sampleLastY = -1;
+            sampleStepY = -1;
+        }
+
+        while (sampleY != sampleLastY)
+        {
+            int sampleX = 0;
+            int sampleLastX = bufferWidth;
+            int sampleStepX = 1;
+            if (reverseX)
+            {
+                sampleX = bufferWidth - 1;
+                sampleLastX = -1;
+                sampleStepX = -1;
+            }
+
+            while (sampleX != sampleLastX)
+            {
+                int pixelX = sampleX + positionX;
+                int pixelY = sampleY + positionY;
+
+                if (belongsToRepresentation(pixelX, pixelY))
+                    renderSample(target, sampleX, sampleY, numSamples++, stipple);
+
+                sampleX += sampleStepX;
+            }
+
+            sampleY += sampleStepY;
+        }
+    }
+
+    /**
+     * Finds the pixels of the current line by stepping along its major axis.
+     *
+     * The minor coordinate of the line at the center of each pixel along the
+     * major axis is tracked with an integer decision variable in sub-pixel
+     * units; the pixel whose diamond contains this point, or whose bottom or
+     * right corner coincides with it, is the one exited by the line. Only the
+     * pixels whose diamonds may contain an end point and the pixels next to
+     * a diamond corner are tested against the "diamond exit" rule.
+     */
+    void stepLine(
+                LineSampler target,
+                int positionX,
+                int positionY,
+                int bufferWidth,
+                int bufferHeight,
+                Stipple stipple
+                )
+    {
+        // Express the end points in sub-pixel units along the major and the
+        // minor axis of the line.
+        //
+
+        int shift = FPMath.FRACTION_BITS - LineRenderer.SUBPIXEL_BITS;
+        long major1 = (xMajor ? p1.x : p1.y) >> shift;
+        long minor1 = (xMajor ? p1.y : p1.x) >> shift;
+        long major2 = (xMajor ? p2.x : p2.y) >> shift;
+        long minor2 = (xMajor ? p2.y : p2.x) >> shift;
+
+        if (major1 == major2)
+        {
+            scanLine(target, positionX, positionY, bufferWidth, bufferHeight, false, false, stipple);
+            return;
+        }
+
+        int majorPosition = xMajor ? positionX : positionY;
+        int majorCount = xMajor ? bufferWidth : bufferHeight;
+        int minorPosition = xMajor ? positionY : positionX;
+        int minorLast = minorPosition + (xMajor ? bufferHeight : bufferWidth) - 1;
+        long minMajor = Math.min(major1, major2);
+        long maxMajor = Math.max(major1, major2);
+
+        // Step from the 1st towards the 2nd end point. The minor coordinate of
+        // the line at the center of a pixel is minor1 + numerator / deltaMajor
+        // sub-pixel units where the numerator grows by deltaMinor for every
+        // sub-pixel unit along the major axis. The decision variable is kept
+        // in the range (0, denominator], so the selected pixel is the one with
+        // the minor coordinate of the center rounded down, with ties going to
+        // the bottom or the right pixel's neighbor whose corner is hot.
+        //
+
+        int direction = (major2 > major1) ? 1 : -1;
+        int minorDirection = (minor2 >= minor1) ? 1 : -1;
+        long one = 1L << LineRenderer.SUBPIXEL_BITS;
+        long deltaMajor = Math.abs(major2 - major1);
+        long deltaMinor = minor2 - minor1;
+        long denominator = deltaMajor << LineRenderer.SUBPIXEL_BITS;
+        long margin = (deltaMinor != 0) ? denominator >> LineRenderer.TIE_MARGIN_BITS : -1;
+        long step = deltaMinor << LineRenderer.SUBPIXEL_BITS;
+
+        int pixel = (direction > 0) ? majorPosition : majorPosition + majorCount - 1;
+        long base = minor1 >> LineRenderer.SUBPIXEL_BITS;
+        long numerator = (minor1 - (base << LineRenderer.SUBPIXEL_BITS)) * deltaMajor
+                        + direction * ((((long) pixel << LineRenderer.SUBPIXEL_BITS) + (one >> 1)) - major1) * deltaMinor;
+        long quotient = (numerator > 0)
+                        ? (numerator + denominator - 1) / denominator
+                        : -(-numerator / denominator);
+
+        int minor = (int) (base + quotient - 1);
+        long error = numerator - (quotient - 1) * denominator;
+
+        for (int count = 0; count < majorCount; count++)
+        {
+            long start = (long) pixel << LineRenderer.SUBPIXEL_BITS;
+            boolean interior = start > minMajor && start + one < maxMajor;
+            boolean tie = error <= margin || error >= denominator - margin;
+
+            if (interior && !tie)
+            {
+                if (minor >= minorPosition && minor <= minorLast)
+                    stepSample(target, pixel, minor, positionX, positionY, stipple);
+            }
+            else
+            {
+                for (int index = -1; index <= 1; index++)
+                {
+                    int candidate = minor + index * minorDirection;
+                    if (candidate < minorPosition || candidate > minorLast)
+                        continue;
+
+                    boolean belongs = xMajor
+                                    ? belongsToRepresentation(pixel, candidate)
+                                    : belongsToRepresentation(candidate, pixel);
+                    if (belongs)
+                        stepSample(target, pixel, candidate, positionX, positionY, stipple);
+                }
+            }
+
+            pixel += direction;
+            error += step;
+            if (error > denominator)
+            {
+                error -= denominator;
+                minor++;
+            }
+            else if (error <= 0)
+            {
+                error += denominator;
+                minor--;
+            }
+        }
+    }
+
+    /**
+     * Renders the sample of the pixel with the specified coordinates along the
+     * major and the minor axis of the current line.
+     */
+    void stepSample(LineSampler target, int major, int minor, int positionX, int positionY, Stipple stipple)
+    {
+        if (xMajor)
+            renderSample(target, major - positionX, minor - positionY, numSamples++, stipple);
+        else
+            renderSample(target, minor - positionX, major - positionY, numSamples++, stipple);
+    }
+
+    /**
+     * Rounds the specified coordinate to the nearest point of the sub-pixel
+     * grid used by the stepper engine.
+     */
+    static double snap(double coordinate)
+    {
+        return Math.round(coordinate * (1 << LineRenderer.SUBPIXEL_BITS)) / (double) (1 << LineRenderer.SUBPIXEL_BITS);
+    }
+
+    /**
+     * TODO
+     */
+    void renderSample(LineSampler target, int sampleX, int sampleY, int number, Stipple stipple)
+    {
+        if (stipple != null)
+        {
+            int stippleBit = ((int) number / stipple.factor) % stipple.length;
+            if (((stipple.stipple >> stippleBit) & 1) == 0)
+                return;
+        }
+
+        int color = target.strokeRGB;
+        if (gradientEnabled)
+            color = gradient.colorAt(xMajor ? target.bufferX + sampleX : target.bufferY + sampleY);
+
+        if (xMajor)
+        {
+            for (int index = 0; index < width; index++)
+                target.sample(sampleX, sampleY + index, color);
+        }
+        else
+            target.sampleSpan(sampleX, sampleY, width, color);
+    }
+
+    /**
+     * Returns true if the pixel whose top-left corner is given by the specified
+     * coordinates is part of the line's representation, false otherwise.
+     *
+     * The pixel will belong to the line's representation if and only if the
+     * line has a common point with the diamond region around the pixel's center
+     * as governed by implemented specification.
+     */
+    boolean belongsToRepresentation(int x, int y)
+    {
+        // Check whether the pixel is too far away from the line to be part of
+        // it.
+        //
+
+        long centerX = FPMath.toFixed(x) + FPMath.HALF;
+        long centerY = FPMath.toFixed(y) + FPMath.HALF;
+
+        if (rejectPoint(centerX, centerY))
+            return false;
+
+        // Test for trivial cases:
+        //
+        // 1. If the 2nd end point is within the diamond area, discard the pixel
+        // since the line is not exiting.
+        //
+        // 2. If the 1st end point is within the diamond area, accept the pixel
+        // since the line is exiting.
+        //
+
+        Point[] points =
+            {
+                new Point(centerX - FPMath.HALF, centerY              ),    // 0
+                new Point(centerX + FPMath.HALF, centerY              ),    // 1
+                new Point(centerX              , centerY - FPMath.HALF),    // 2
+                new Point(centerX              , centerY + FPMath.HALF)     // 3
+            };
+
+        Point[][] edges =
+            {
+                { points[0], points[3] },    // 0
+                { points[3], points[1] },    // 1
+                { points[1], points[2] },    // 2
+                { points[2], points[0] }     // 3
+            };
+
+        if (p2.equals(points[3])
+            || (!xMajor && p2.equals(points[1]))
+            || (isOnLeftSide(edges[0], p2, false)
+                && isOnLeftSide(edges[1], p2, false)
+                && isOnLeftSide(edges[2], p2, true)
+                && isOnLeftSide(edges[3], p2, true)))
+        {
+            return false;
+        }
+
+        if (p1.equals(points[3])
+            || (!xMajor && p1.equals(points[1]))
+            || (isOnLeftSide(edges[0], p1, false)
+                && isOnLeftSide(edges[1], p1, false)
+                && isOnLeftSide(edges[2], p1, true)
+                && isOnLeftSide(edges[3], p1, true)))
+        {
+            return true;
+        }
+
+        // Accept the pixel if the line intersects the diamond area either at a
+        // "hot" point or at 2 different points.
+        //
+
+        IntersectionInfo info = new IntersectionInfo();
+        int numIntersections = 0;
+
+        for (int index = 0; index < 4 && numIntersections < 2; index++)
+        {
+            if (findEdgeIntersection(edges[index], info))
+            {
+                if (info.edgeOffset == 0)
+                {
+                    if (edges[index][0] == points[3] || (!xMajor && edges[index][0] == points[1]))
+                        return true;
+                }
+                if (info.edgeOffset == info.denominator)
+                {
+                    if (edges[index][1] == points[3] || (!xMajor && edges[index][1] == points[1]))
+                        return true;
+                }
+
+                boolean edgeIntersect = (info.denominator < 0)
+                                    ? (info.edgeOffset <= 0 && info.edgeOffset > info.denominator)
+                                    : (info.edgeOffset >= 0 && info.edgeOffset < info.denominator);
+                boolean lineIntersect = (info.denominator < 0)
+                                    ? (info.lineOffset <= 0 && info.lineOffset >= info.denominator)
+                                    : (info.lineOffset >= 0 && info.lineOffset <= info.denominator);
+
+                if (edgeIntersect && lineIntersect)
+                    numIntersections++;
+            }
+        }
+
+        return numIntersections == 2;
+    }
+
+    /**
+     * Returns false if the specified edge and the line are parallel, true
+     * otherwise; If true is returned, the intersection offsets are stored
+     * in the specified data object.
+     */
+    boolean findEdgeIntersection(Point[] edge, IntersectionInfo info)
+    {
+        // Check if the lines are parallel.
+        //
+
+        long denominator = FPMath.mul(p2.x - p1.x, edge[1].y - edge[0].y)
+                                - FPMath.mul(p2.y - p1.y, edge[1].x - edge[0].x);
+        if (denominator == 0)
+            return false;
+
+        // Calculate the intersection points.
+        //
+
+        info.denominator = denominator;
+        info.lineOffset = FPMath.mul(p1.y - edge[0].y, edge[1].x - edge[0].x)
+                            - FPMath.mul(p1.x - edge[0].x, edge[1].y - edge[0].y);
+        info.edgeOffset = FPMath.mul(p1.y - edge[0].y, p2.x - p1.x)
+                            - FPMath.mul(p1.x - edge[0].x, p2.y - p1.y);
+
+        return true;
+    }
+
+    /**
+     * Returns true if the specified point is strictly on the left side of the
+     * specified edge, false otherwise; if true is specified for the flag, the
+     * method will also return true if the point is lying on the edge's
+     * interior excluding the end points.
+     */
+    static boolean isOnLeftSide(Point[] edge, Point point, boolean strict)
+    {
+        long val = FPMath.mul(edge[1].x - edge[0].x, point.y - edge[0].y)
+                    - FPMath.mul(edge[1].y - edge[0].y, point.x - edge[0].x);
+
+        long numenator = point.x - edge[0].x;
+        long denominator = edge[1].x - edge[0].x;
+        boolean inBounds = (denominator < 0)
+                                ? (numenator < 0 && numenator > denominator)
+                                : (numenator > 0 && numenator < denominator);
+
+        return val < 0 || (!strict && val == 0 && inBounds);
+    }
+
+    /**
+     * Returns true if the point with the specified coordinates is too far from
+     * the line to be considered, false otherwise.
+     */
+    boolean rejectPoint(long x, long y)
+    {
+        if (a == 0)
+            return FPMath.mul(y - c, y - c) > FPMath.QUARTER;
+        else if (b == 0)
+            return FPMath.mul(x - c, x - c) > FPMath.QUARTER;
+
+        long numenator = FPMath.mul(a, x) + FPMath.mul(b, y) + c;
+        long denominator = FPMath.mul(a, a) + FPMath.mul(b, b);
+
+        return FPMath.mul(numenator, numenator) > FPMath.mul(FPMath.QUARTER, denominator);
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    /**
+     * Returns the engine used to find the pixels of lines.
+     */
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Sets the engine used to find the pixels of lines.
+     */
+    public void setEngine(Engine engine)
+    {
+        if (engine == null)
+            throw new IllegalArgumentException("The engine cannot be null.");
+
+        this.engine = engine;
+    }
+
+    /**
+     * Returns the mode of reducing the segments of paths before rasterization.
+     */
+    /**
+     * Returns true if a path with the specified stroke color, vertex colors
+     * and stipple can be decimated, false otherwise. Exact decimation drops
+     * blends, so it is limited to opaque stroke colors.
+     */
+    boolean canDecimate(Color strokeColor, Color[] vertexColors, Stipple stipple)
+    {
+        if (decimation == Decimation.NONE || vertexColors != null || stipple != null)
+            return false;
+
+        return decimation != Decimation.EXACT || strokeColor.getAlpha() == 255;
+    }
+
+    public Decimation getDecimation()
+    {
+        return decimation;
+    }
+
+    /**
+     * Sets the mode of reducing the segments of paths before rasterization.
+     */
+    public void setDecimation(Decimation decimation)
+    {
+        if (decimation == null)
+            throw new IllegalArgumentException("The decimation cannot be null.");
+
+        this.decimation = decimation;
+    }
+}
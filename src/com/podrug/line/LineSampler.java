@@ -18,16 +18,19 @@ public class LineSampler
      * TODO
      */
     Color strokeColor;
+    int strokeRGB;
 
     BufferedImage buffer;
     int[] bufferData;
+    int bufferX;
+    int bufferY;
 
     /**
      * TODO
      */
     public LineSampler()
     {
-        strokeColor = Color.BLACK;
+        setStrokeColor(Color.BLACK);
     }
 
     /**
@@ -40,6 +43,18 @@ public class LineSampler
         Arrays.fill(bufferData, 0);
     }
 
+    /**
+     * Prepares the sampler to receive the samples of a line whose bounding box
+     * has the specified position and dimensions. The coordinates passed to
+     * the sampling methods are relative to the position of the bounding box.
+     */
+    public void setBufferBounds(int x, int y, int width, int height)
+    {
+        bufferX = x;
+        bufferY = y;
+        setBufferDimensions(width, height);
+    }
+
     /**
      * TODO
      */
@@ -56,8 +71,36 @@ public class LineSampler
      */
     public void sample(int x, int y)
     {
-        int value = strokeColor.getRGB();
-        bufferData[y * buffer.getWidth() + x] = value;
+        sample(x, y, strokeRGB);
+    }
+
+    /**
+     * Samples the specified coordinates with the specified ARGB value instead
+     * of the stroke color.
+     */
+    public void sample(int x, int y, int argb)
+    {
+        bufferData[y * buffer.getWidth() + x] = argb;
+    }
+
+    /**
+     * Samples the horizontal span of the specified length starting at the
+     * specified coordinates.
+     */
+    public void sampleSpan(int x, int y, int length)
+    {
+        sampleSpan(x, y, length, strokeRGB);
+    }
+
+    /**
+     * Samples the horizontal span of the specified length starting at the
+     * specified coordinates with the specified ARGB value instead of the
+     * stroke color.
+     */
+    public void sampleSpan(int x, int y, int length, int argb)
+    {
+        for (int index = 0; index < length; index++)
+            sample(x + index, y, argb);
     }
 
     /***************************************************************************
@@ -75,5 +118,6 @@ public class LineSampler
             throw new IllegalArgumentException("The stroke color cannot be null.");
 
         this.strokeColor = strokeColor;
+        this.strokeRGB = strokeColor.getRGB();
     }
 }
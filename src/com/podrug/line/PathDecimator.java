@@ -0,0 +1,358 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import com.podrug.line.LineRenderer.Decimation;
+import com.podrug.line.LineRenderer.Engine;
+
+/**
+ * Reduces the number of segments of a path before rasterization. The segments
+ * are passed in device coordinates one after another; the segments which
+ * should be rasterized are stored in {@link #segments}.
+ *
+ * @see Decimation
+ */
+final class PathDecimator
+{
+    /***************************************************************************
+     * HELPER TYPES                                                            *
+     **************************************************************************/
+
+    /**
+     * Records the pixels of a line in absolute coordinates.
+     */
+    static final class PixelRecorder extends DirectSampler
+    {
+        final int[] pixelsX = new int[MAX_PIXELS];
+        final int[] pixelsY = new int[MAX_PIXELS];
+        int numPixels;
+        boolean overflow;
+
+        void reset()
+        {
+            numPixels = 0;
+            overflow = false;
+        }
+
+        @Override
+        public void sample(int x, int y, int argb)
+        {
+            if (numPixels == MAX_PIXELS)
+            {
+                overflow = true;
+                return;
+            }
+
+            pixelsX[numPixels] = bufferX + x;
+            pixelsY[numPixels] = bufferY + y;
+            numPixels++;
+        }
+    }
+
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The maximum number of pixels recorded per segment and remembered as
+     * already rendered in the exact mode.
+     */
+    static final int MAX_PIXELS = 8;
+
+    /**
+     * The distance in pixels by which the area of the pixels a short segment
+     * can produce is enlarged to account for the rounding of the fixed-point
+     * representation.
+     */
+    static final double TOLERANCE = 1.0 / 64;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final LineRasterizer rasterizer;
+    final Decimation mode;
+    final boolean wide;
+    final double[] segments = new double[8];
+    int numSegments;
+
+    // The state of the exact mode.
+    //
+
+    final PixelRecorder recorder = new PixelRecorder();
+    boolean recorded;
+    final int[] renderedX = new int[MAX_PIXELS];
+    final int[] renderedY = new int[MAX_PIXELS];
+    final boolean[] renderedMajor = new boolean[MAX_PIXELS];
+    int numRendered;
+    int nextRendered;
+
+    // The state of the approximate mode.
+    //
+
+    boolean pending;
+    double keptX;
+    double keptY;
+    double lastX;
+    double lastY;
+
+    /**
+     * Creates a decimator for a path rendered by the specified rasterizer with
+     * the specified mode and stroke width.
+     */
+    PathDecimator(LineRasterizer rasterizer, Decimation mode, float strokeWidth)
+    {
+        this.rasterizer = rasterizer;
+        this.mode = mode;
+        this.wide = Math.round(strokeWidth) > 1;
+    }
+
+    /**
+     * Passes the segment with the specified end points to the decimator and
+     * returns the number of segments which should be rasterized now.
+     */
+    int add(double x1, double y1, double x2, double y2)
+    {
+        numSegments = 0;
+        recorded = false;
+        if (mode == Decimation.EXACT)
+            addExact(x1, y1, x2, y2);
+        else
+            addApproximate(x1, y1, x2, y2);
+        return numSegments;
+    }
+
+    /**
+     * Returns the number of segments which remain to be rasterized at the end
+     * of the path.
+     */
+    int flush()
+    {
+        numSegments = 0;
+        recorded = false;
+        if (mode == Decimation.APPROXIMATE)
+            flushChain();
+        return numSegments;
+    }
+
+    /**
+     * Rasterizes segments shorter than a pixel along both axes without
+     * rendering them and drops the ones whose pixels have all been rendered
+     * recently. Longer segments are always kept.
+     *
+     * With the predicate engine, segments whose possible pixels have all been
+     * rendered recently are dropped without rasterizing them. If a rasterized
+     * segment of a thin path is kept, its recorded pixels are rendered instead
+     * of rasterizing it again.
+     */
+    void addExact(double x1, double y1, double x2, double y2)
+    {
+        if (Math.abs(x2 - x1) >= 1 || Math.abs(y2 - y1) >= 1)
+        {
+            numRendered = 0;
+            nextRendered = 0;
+            store(x1, y1, x2, y2);
+            return;
+        }
+
+        // Wide lines are shifted along the minor axis, so the orientation of
+        // the line is part of the identity of a pixel. The stepper engine
+        // occasionally produces pixels outside the area of the predicate, so
+        // only the latter can skip the rasterization.
+        //
+
+        boolean major = wide && Math.abs(x2 - x1) >= Math.abs(y2 - y1);
+        if (rasterizer.engine == Engine.PREDICATE && isCovered(x1, y1, x2, y2, major))
+            return;
+
+        recorder.reset();
+        rasterizer.renderLine(recorder, null, x1, y1, x2, y2, null, null, 1, null);
+        if (recorder.overflow)
+        {
+            store(x1, y1, x2, y2);
+            return;
+        }
+
+        boolean covered = true;
+        for (int index = 0; index < recorder.numPixels; index++)
+        {
+            int x = recorder.pixelsX[index];
+            int y = recorder.pixelsY[index];
+            if (!isRendered(x, y, major))
+            {
+                covered = false;
+                renderedX[nextRendered] = x;
+                renderedY[nextRendered] = y;
+                renderedMajor[nextRendered] = major;
+                nextRendered = (nextRendered + 1) % MAX_PIXELS;
+                numRendered = Math.min(numRendered + 1, MAX_PIXELS);
+            }
+        }
+
+        if (!covered)
+        {
+            store(x1, y1, x2, y2);
+            recorded = !wide;
+        }
+    }
+
+    /**
+     * Returns true if every pixel the short segment with the specified end
+     * points can produce has been rendered recently, false otherwise.
+     *
+     * The rasterizer only produces pixels within the area it scans. Such a
+     * pixel is produced if the segment touches its diamond, which lies within
+     * half a pixel of its center, or if the line through the end points
+     * passes through one of its "hot" corners.
+     */
+    boolean isCovered(double x1, double y1, double x2, double y2, boolean major)
+    {
+        if (numRendered == 0)
+            return false;
+
+        // A degenerate segment is treated like a vertical line through its
+        // end point, just like the rasterizer does.
+        //
+
+        double deltaX = x2 - x1;
+        double deltaY = y2 - y1;
+        double lengthSq = deltaX * deltaX + deltaY * deltaY;
+        double lineX = deltaX;
+        double lineY = deltaY;
+        if (lengthSq == 0)
+            lineY = 1;
+        double lineLength = Math.sqrt(lineX * lineX + lineY * lineY);
+
+        int firstX = (int) Math.floor(Math.min(x1, x2) - TOLERANCE) - 1;
+        int lastX = (int) Math.ceil(Math.max(x1, x2) + TOLERANCE) - 1;
+        int firstY = (int) Math.floor(Math.min(y1, y2) - TOLERANCE) - 1;
+        int lastY = (int) Math.ceil(Math.max(y1, y2) + TOLERANCE) - 1;
+        double radius = 0.5 + TOLERANCE;
+
+        for (int y = firstY; y <= lastY; y++)
+        {
+            for (int x = firstX; x <= lastX; x++)
+            {
+                if (isRendered(x, y, major))
+                    continue;
+
+                // Find the point of the segment closest to the center.
+                //
+
+                double centerX = x + 0.5 - x1;
+                double centerY = y + 0.5 - y1;
+                double t = (lengthSq > 0) ? (centerX * deltaX + centerY * deltaY) / lengthSq : 0;
+                t = Math.max(0, Math.min(1, t));
+                double offsetX = centerX - t * deltaX;
+                double offsetY = centerY - t * deltaY;
+                if (offsetX * offsetX + offsetY * offsetY <= radius * radius)
+                    return false;
+
+                // Check the bottom and the right corner.
+                //
+
+                double bottom = lineY * centerX - lineX * (centerY + 0.5);
+                double right = lineY * (centerX + 0.5) - lineX * centerY;
+                if (Math.abs(bottom) <= TOLERANCE * lineLength || Math.abs(right) <= TOLERANCE * lineLength)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the pixel with the specified coordinates has been
+     * rendered recently, false otherwise.
+     */
+    boolean isRendered(int x, int y, boolean major)
+    {
+        for (int index = 0; index < numRendered; index++)
+        {
+            if (renderedX[index] == x && renderedY[index] == y && renderedMajor[index] == major)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merges the consecutive vertices of the path which fall within the pixel
+     * of the last kept vertex, so every kept segment leaves the pixel it
+     * starts in. The dropped vertices are less than a pixel away from the
+     * kept segments along both axes.
+     */
+    void addApproximate(double x1, double y1, double x2, double y2)
+    {
+        // A segment which doesn't continue the previous one starts a new chain
+        // of vertices; the rest of the previous chain must be rendered first.
+        //
+
+        if (pending && (x1 != lastX || y1 != lastY))
+            flushChain();
+
+        if (!pending)
+        {
+            keptX = x1;
+            keptY = y1;
+            pending = true;
+        }
+
+        lastX = x2;
+        lastY = y2;
+
+        if (Math.floor(x2) != Math.floor(keptX) || Math.floor(y2) != Math.floor(keptY))
+        {
+            store(keptX, keptY, x2, y2);
+            keptX = x2;
+            keptY = y2;
+        }
+    }
+
+    /**
+     * Stores the segment from the last kept vertex of the current chain to
+     * its last vertex, if any, and ends the chain.
+     */
+    void flushChain()
+    {
+        if (!pending)
+            return;
+
+        pending = false;
+        if (lastX != keptX || lastY != keptY)
+            store(keptX, keptY, lastX, lastY);
+    }
+
+    /**
+     * Appends the segment with the specified end points to the segments to be
+     * rasterized.
+     */
+    void store(double x1, double y1, double x2, double y2)
+    {
+        int index = numSegments * 4;
+        segments[index] = x1;
+        segments[index + 1] = y1;
+        segments[index + 2] = x2;
+        segments[index + 3] = y2;
+        numSegments++;
+    }
+}
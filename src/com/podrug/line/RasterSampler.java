@@ -0,0 +1,246 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * This class implements a sampler which composites the samples of lines
+ * directly into the pixels of a destination raster using the SrcOver rule
+ * instead of drawing an intermediate image.
+ * <p>
+ * Opaque samples are stored without reading the destination. The alpha of the
+ * samples can be scaled by a constant extra alpha like the one of an
+ * {@link java.awt.AlphaComposite}.
+ */
+public class RasterSampler extends DirectSampler
+{
+    /***************************************************************************
+     * HELPER TYPES                                                            *
+     **************************************************************************/
+
+    /**
+     * Enumerates the supported layouts of the destination pixels.
+     */
+    public static enum Layout
+    {
+        /**
+         * Non-premultiplied ARGB pixels like the ones of
+         * {@link BufferedImage#TYPE_INT_ARGB}.
+         */
+        ARGB,
+
+        /**
+         * Premultiplied ARGB pixels like the ones of
+         * {@link BufferedImage#TYPE_INT_ARGB_PRE}.
+         */
+        ARGB_PRE,
+
+        /**
+         * Opaque RGB pixels like the ones of {@link BufferedImage#TYPE_INT_RGB}.
+         */
+        RGB
+    }
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final int[] data;
+    final int offset;
+    final int scanline;
+    final int width;
+    final int height;
+    final Compositor compositor;
+
+    /**
+     * Creates a sampler which composites into the specified image. The image
+     * must be of type {@link BufferedImage#TYPE_INT_ARGB},
+     * {@link BufferedImage#TYPE_INT_ARGB_PRE} or
+     * {@link BufferedImage#TYPE_INT_RGB}.
+     */
+    public RasterSampler(BufferedImage image)
+    {
+        this(image.getRaster(), layoutOf(image));
+    }
+
+    /**
+     * Creates a sampler which composites into the specified array of pixels
+     * with the specified layout. The array is addressed with the specified
+     * offset of the top-left pixel and the specified number of elements per
+     * row.
+     */
+    public RasterSampler(int[] data, int offset, int scanline, int width, int height, Layout layout)
+    {
+        if (data == null)
+            throw new IllegalArgumentException("The data cannot be null.");
+        if (width < 0 || height < 0 || scanline < width)
+            throw new IllegalArgumentException("The dimensions are invalid.");
+
+        this.data = data;
+        this.offset = offset;
+        this.scanline = scanline;
+        this.width = width;
+        this.height = height;
+        this.compositor = new Compositor(layout);
+    }
+
+    RasterSampler(WritableRaster raster, Layout layout)
+    {
+        this(dataOf(raster), offsetOf(raster), scanlineOf(raster), raster.getWidth(), raster.getHeight(), layout);
+    }
+
+    @Override
+    public void sample(int x, int y, int argb)
+    {
+        x += bufferX;
+        y += bufferY;
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return;
+
+        compositor.composite(data, offset + y * scanline + x, 1, argb, compositor.prepare(argb));
+    }
+
+    @Override
+    public void sampleSpan(int x, int y, int length, int argb)
+    {
+        compositeSpan(bufferX + x, bufferY + y, length, argb);
+    }
+
+    /**
+     * Composites the stroke color into the pixels of the destination which
+     * are covered in the specified mask placed at the specified position.
+     * Consecutive covered pixels are composited as spans.
+     */
+    public void composite(CoverageMask mask, int x, int y)
+    {
+        int shift = CoverageMask.WORD_SHIFT;
+        for (int row = 0; row < mask.height; row++)
+        {
+            int rowOffset = row * mask.stride;
+            for (int index = 0; index < mask.stride; index++)
+            {
+                long word = mask.words[rowOffset + index];
+                int base = index << shift;
+                while (word != 0)
+                {
+                    int start = Long.numberOfTrailingZeros(word);
+                    long run = ~(word >>> start);
+                    int length = (run == 0) ? Long.SIZE - start : Long.numberOfTrailingZeros(run);
+
+                    compositeSpan(x + base + start, y + row, length, strokeRGB);
+
+                    word &= (length + start == Long.SIZE) ? 0 : (-1L << (start + length));
+                }
+            }
+        }
+    }
+
+    /**
+     * Composites the specified non-premultiplied ARGB value into the
+     * horizontal span of the specified length starting at the specified
+     * position of the destination. The part of the span outside the
+     * destination is ignored.
+     */
+    void compositeSpan(int x, int y, int length, int argb)
+    {
+        if (y < 0 || y >= height)
+            return;
+
+        int first = Math.max(x, 0);
+        int last = Math.min(x + length, width);
+        if (first < last)
+            compositor.composite(data, offset + y * scanline + first, last - first, argb, compositor.prepare(argb));
+    }
+
+    /**
+     * Returns the layout of the pixels of the specified image.
+     */
+    static Layout layoutOf(BufferedImage image)
+    {
+        switch (image.getType())
+        {
+        case BufferedImage.TYPE_INT_ARGB:
+            return Layout.ARGB;
+        case BufferedImage.TYPE_INT_ARGB_PRE:
+            return Layout.ARGB_PRE;
+        case BufferedImage.TYPE_INT_RGB:
+            return Layout.RGB;
+        default:
+            throw new IllegalArgumentException("The image type is not supported.");
+        }
+    }
+
+    /**
+     * Returns the array of pixels of the specified raster.
+     */
+    static int[] dataOf(WritableRaster raster)
+    {
+        return ((DataBufferInt) raster.getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns the index of the top-left pixel of the specified raster within
+     * its array of pixels.
+     */
+    static int offsetOf(WritableRaster raster)
+    {
+        return raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * scanlineOf(raster)
+                - raster.getSampleModelTranslateX();
+    }
+
+    /**
+     * Returns the number of elements per row of the specified raster.
+     */
+    static int scanlineOf(WritableRaster raster)
+    {
+        return ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public Layout getLayout()
+    {
+        return compositor.layout;
+    }
+
+    public float getExtraAlpha()
+    {
+        return compositor.getExtraAlpha();
+    }
+
+    /**
+     * Sets the constant alpha by which the alpha of every sample is scaled.
+     */
+    public void setExtraAlpha(float extraAlpha)
+    {
+        compositor.setExtraAlpha(extraAlpha);
+    }
+}
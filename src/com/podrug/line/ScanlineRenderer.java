@@ -0,0 +1,615 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import com.podrug.line.util.FPMath;
+
+/**
+ * Renders the lines of a {@link DisplayList} row by row instead of line by
+ * line. The segments are sorted by their first row and kept in a list of
+ * active segments while the rows are visited from top to bottom; all pixels
+ * of a row are emitted before the next row is started, so the target is
+ * written sequentially and every completed row can be passed on, for example
+ * to an image encoder, before the rest of the batch is rendered.
+ * <p>
+ * A segment recorded for the stepper engine sets up the decision variable of
+ * {@link LineRasterizer#stepLine stepLine} when its first row is reached and
+ * is then stepped row by row: a y-major segment by a pixel and an x-major
+ * one by the runs of pixels in the row. Like in the stepper engine, only the
+ * pixels next to the end points and to diamond corners are tested against
+ * the "diamond exit" rule. The other segments test the pixels of their
+ * bounding box a row at a time. A segment only keeps the pixels found for
+ * the next few rows, so the memory doesn't grow with its length. The pixels
+ * and the order in which overlapping segments are composited are the same
+ * as when the display list is replayed. Stippled lines are not supported
+ * since the stipple depends on the order of the pixels along the line.
+ * <p>
+ * This class is meant for targets which have to be written in row order. It
+ * is not generally faster than {@link DisplayList#replay}: visiting every
+ * active segment in every row costs more than stepping a line on its own,
+ * so batches of long steep lines or of many short lines render more slowly,
+ * while lines a few hundred pixels long render about as fast. Use the
+ * latter if the order of the writes doesn't matter.
+ */
+public class ScanlineRenderer
+{
+    /***************************************************************************
+     * HELPER TYPES                                                            *
+     **************************************************************************/
+
+    /**
+     * Is notified whenever all pixels of a row have been emitted.
+     */
+    public static interface RowListener
+    {
+        /**
+         * Called after all pixels of the row with the specified coordinate
+         * have been passed to the sampler. The rows are reported from top to
+         * bottom.
+         */
+        void rowCompleted(int y);
+    }
+
+    /**
+     * Holds the state of an active segment. A segment set up for the stepper
+     * engine keeps the decision variable of its next step along the major
+     * axis; the other segments keep the next row of their bounding box to be
+     * tested against the "diamond exit" rule. The end points and the standard
+     * form of the line are kept for these tests. The pixels found for later
+     * rows are kept as pending runs, each stored as its first and its last
+     * row, its x coordinate and its length.
+     */
+    static final class ActiveSegment
+    {
+        int index;
+        int argb;
+        int width;
+        boolean xMajor;
+        boolean stepper;
+        int lastRow;
+        int pixel;
+        int numSteps;
+        int direction;
+        int minor;
+        int minorPosition;
+        int minorLast;
+        long error;
+        long step;
+        long denominator;
+        long margin;
+        int interiorFirst;
+        int interiorLast;
+        long x1;
+        long y1;
+        long x2;
+        long y2;
+        long a;
+        long b;
+        long c;
+        int[] pending = new int[4 * 8];
+        int numPending;
+    }
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final LineRasterizer rasterizer;
+    int loadedSegment;
+
+    /**
+     * Creates a renderer with its own rasterizer.
+     */
+    public ScanlineRenderer()
+    {
+        this(new LineRasterizer());
+    }
+
+    /**
+     * Creates a renderer which rasterizes the segments with the specified
+     * rasterizer.
+     */
+    public ScanlineRenderer(LineRasterizer rasterizer)
+    {
+        if (rasterizer == null)
+            throw new IllegalArgumentException("The rasterizer cannot be null.");
+
+        this.rasterizer = rasterizer;
+    }
+
+    /**
+     * Renders the lines of the specified display list to the specified
+     * sampler row by row.
+     */
+    public void render(DisplayList list, LineSampler target)
+    {
+        render(list, target, null);
+    }
+
+    /**
+     * Renders the lines of the specified display list to the specified
+     * sampler row by row and notifies the specified listener, if any, about
+     * every completed row of the display list's bounds.
+     * <p>
+     * The sampler is prepared once for the bounds of the whole display list,
+     * so samplers which buffer the pixels of a line receive all lines in a
+     * single buffer.
+     */
+    public void render(DisplayList list, LineSampler target, RowListener listener)
+    {
+        if (list == null)
+            throw new IllegalArgumentException("The display list cannot be null.");
+        if (target == null)
+            throw new IllegalArgumentException("The sampler cannot be null.");
+
+        for (int style = 0; style < list.numStyles; style++)
+        {
+            if (list.styles[style * DisplayList.STYLE_INTS + 2] != 0)
+                throw new IllegalArgumentException("Stippled lines are not supported.");
+        }
+
+        int numSegments = list.numSegments;
+        if (numSegments == 0)
+            return;
+
+        Rectangle area = list.getBounds();
+        target.setBufferBounds(area.x, area.y, area.width, area.height);
+        loadedSegment = -1;
+
+        // Sort the segments by their first row; segments which start in the
+        // same row remain in the order of the display list.
+        //
+
+        long[] keys = new long[numSegments];
+        for (int index = 0; index < numSegments; index++)
+        {
+            long row = list.bounds[index * DisplayList.SEGMENT_INTS + 1] - area.y;
+            keys[index] = (row << 32) | index;
+        }
+        Arrays.sort(keys);
+
+        // Visit the rows from top to bottom. The active segments are kept in
+        // the order of the display list, so overlapping segments are
+        // composited in the same order as when they are replayed; the
+        // segments activated in a row are already in this order and are
+        // merged into the active ones while the row is visited. Retired
+        // segments are reused for the segments activated later.
+        //
+
+        ActiveSegment[] active = new ActiveSegment[16];
+        ActiveSegment[] remaining = new ActiveSegment[16];
+        ActiveSegment[] activated = new ActiveSegment[16];
+        ActiveSegment[] pool = new ActiveSegment[16];
+        int numActive = 0;
+        int numPooled = 0;
+        int next = 0;
+
+        for (int row = area.y; row < area.y + area.height; row++)
+        {
+            int numActivated = 0;
+            while (next < numSegments && (int) (keys[next] >>> 32) + area.y == row)
+            {
+                ActiveSegment segment = (numPooled > 0) ? pool[--numPooled] : new ActiveSegment();
+                activate(list, (int) keys[next++], segment);
+
+                if (numActivated == activated.length)
+                    activated = Arrays.copyOf(activated, numActivated * 2);
+                activated[numActivated++] = segment;
+            }
+
+            if (remaining.length < numActive + numActivated)
+                remaining = new ActiveSegment[(numActive + numActivated) * 2];
+
+            int numRemaining = 0;
+            for (int index = 0, fresh = 0; index < numActive || fresh < numActivated;)
+            {
+                ActiveSegment segment;
+                if (fresh == numActivated || (index < numActive && active[index].index < activated[fresh].index))
+                    segment = active[index++];
+                else
+                    segment = activated[fresh++];
+
+                if (segment.numPending > 0)
+                    emit(segment, target, row);
+                advance(segment, target, row);
+
+                if (row < segment.lastRow)
+                    remaining[numRemaining++] = segment;
+                else
+                {
+                    if (numPooled == pool.length)
+                        pool = Arrays.copyOf(pool, numPooled * 2);
+                    pool[numPooled++] = segment;
+                }
+            }
+
+            ActiveSegment[] swap = active;
+            active = remaining;
+            remaining = swap;
+            numActive = numRemaining;
+
+            if (listener != null)
+                listener.rowCompleted(row);
+        }
+    }
+
+    /**
+     * Prepares the specified active segment for the segment of the specified
+     * display list with the specified index. A segment of the stepper engine
+     * is walked along its major axis from the end which yields its rows from
+     * top to bottom; the decision variable is set up for the first pixel
+     * like {@link LineRasterizer#stepLine stepLine} does.
+     */
+    void activate(DisplayList list, int index, ActiveSegment segment)
+    {
+        list.loadSegment(rasterizer, index, 0, 0);
+        loadedSegment = index;
+
+        int offset = index * DisplayList.SEGMENT_INTS;
+        segment.index = index;
+        segment.argb = list.styles[list.bounds[offset + 4] * DisplayList.STYLE_INTS];
+        segment.width = rasterizer.width;
+        segment.xMajor = rasterizer.xMajor;
+        segment.lastRow = rasterizer.positionY + rasterizer.bufferHeight - 1
+                        + (rasterizer.xMajor ? rasterizer.width - 1 : 0);
+        segment.numPending = 0;
+        segment.x1 = rasterizer.p1.x;
+        segment.y1 = rasterizer.p1.y;
+        segment.x2 = rasterizer.p2.x;
+        segment.y2 = rasterizer.p2.y;
+        segment.a = rasterizer.a;
+        segment.b = rasterizer.b;
+        segment.c = rasterizer.c;
+
+        int shift = FPMath.FRACTION_BITS - LineRenderer.SUBPIXEL_BITS;
+        boolean xMajor = rasterizer.xMajor;
+        long major1 = (xMajor ? rasterizer.p1.x : rasterizer.p1.y) >> shift;
+        long minor1 = (xMajor ? rasterizer.p1.y : rasterizer.p1.x) >> shift;
+        long major2 = (xMajor ? rasterizer.p2.x : rasterizer.p2.y) >> shift;
+        long minor2 = (xMajor ? rasterizer.p2.y : rasterizer.p2.x) >> shift;
+
+        segment.stepper = rasterizer.stepper && major1 != major2;
+        if (!segment.stepper)
+        {
+            segment.pixel = rasterizer.positionY;
+            segment.numSteps = rasterizer.bufferHeight;
+            segment.minorPosition = rasterizer.positionX;
+            segment.minorLast = rasterizer.positionX + rasterizer.bufferWidth - 1;
+            return;
+        }
+
+        int majorPosition = xMajor ? rasterizer.positionX : rasterizer.positionY;
+        int majorCount = xMajor ? rasterizer.bufferWidth : rasterizer.bufferHeight;
+        segment.minorPosition = xMajor ? rasterizer.positionY : rasterizer.positionX;
+        segment.minorLast = segment.minorPosition
+                        + (xMajor ? rasterizer.bufferHeight : rasterizer.bufferWidth) - 1;
+        long one = 1L << LineRenderer.SUBPIXEL_BITS;
+        segment.interiorFirst = (int) (Math.min(major1, major2) >> LineRenderer.SUBPIXEL_BITS) + 1;
+        segment.interiorLast = (int) ((Math.max(major1, major2) - one - 1) >> LineRenderer.SUBPIXEL_BITS);
+
+        // The numerator grows by the step for every pixel towards the right
+        // or the bottom. An x-major segment whose minor coordinate decreases
+        // that way is walked from right to left, so its minor coordinate, the
+        // row, only grows along the walk.
+        //
+
+        int lineDirection = (major2 > major1) ? 1 : -1;
+        long deltaMajor = Math.abs(major2 - major1);
+        long deltaMinor = minor2 - minor1;
+        long denominator = deltaMajor << LineRenderer.SUBPIXEL_BITS;
+        long step = lineDirection * (deltaMinor << LineRenderer.SUBPIXEL_BITS);
+        int direction = (xMajor && step < 0) ? -1 : 1;
+
+        int pixel = (direction > 0) ? majorPosition : majorPosition + majorCount - 1;
+        long base = minor1 >> LineRenderer.SUBPIXEL_BITS;
+        long numerator = (minor1 - (base << LineRenderer.SUBPIXEL_BITS)) * deltaMajor
+                        + lineDirection * ((((long) pixel << LineRenderer.SUBPIXEL_BITS) + (one >> 1)) - major1) * deltaMinor;
+        long quotient = (numerator > 0)
+                        ? (numerator + denominator - 1) / denominator
+                        : -(-numerator / denominator);
+
+        segment.pixel = pixel;
+        segment.numSteps = majorCount;
+        segment.direction = direction;
+        segment.minor = (int) (base + quotient - 1);
+        segment.error = numerator - (quotient - 1) * denominator;
+        segment.step = direction * step;
+        segment.denominator = denominator;
+        segment.margin = (deltaMinor != 0) ? denominator >> LineRenderer.TIE_MARGIN_BITS : -1;
+    }
+
+    /**
+     * Finds the pixels of the specified active segment which may fall into
+     * the specified row, passes the ones in the row to the specified sampler
+     * and adds the others to the pending runs of the segment.
+     * <p>
+     * A segment of the stepper engine is stepped until its minor coordinate
+     * has passed the row if it's x-major, or by a single pixel if it's
+     * y-major; like in {@link LineRasterizer#stepLine stepLine}, only the
+     * pixels next to the end points and to diamond corners are tested
+     * against the "diamond exit" rule. The other segments test every pixel of
+     * the next rows of their bounding box.
+     */
+    void advance(ActiveSegment segment, LineSampler target, int row)
+    {
+        if (!segment.stepper)
+        {
+            while (segment.numSteps > 0 && segment.pixel <= row)
+            {
+                load(segment);
+                for (int x = segment.minorPosition; x <= segment.minorLast; x++)
+                {
+                    if (rasterizer.belongsToRepresentation(x, segment.pixel))
+                        addPixel(segment, target, row, x, segment.pixel);
+                }
+
+                segment.pixel++;
+                segment.numSteps--;
+            }
+        }
+        else if (segment.xMajor)
+            stepRuns(segment, target, row);
+        else if (segment.numSteps > 0)
+            stepRow(segment, target, row);
+    }
+
+    /**
+     * Steps the specified y-major active segment by the pixel of the
+     * specified row, which is the next one of the segment since it is
+     * activated in its first row.
+     */
+    void stepRow(ActiveSegment segment, LineSampler target, int row)
+    {
+        int minor = segment.minor;
+        long error = segment.error;
+        long denominator = segment.denominator;
+        long margin = segment.margin;
+
+        boolean interior = row >= segment.interiorFirst && row <= segment.interiorLast;
+        if (!interior || error <= margin || error >= denominator - margin)
+            testStep(segment, target, row, row, minor);
+        else if (minor >= segment.minorPosition && minor <= segment.minorLast)
+            target.sampleSpan(minor - target.bufferX, row - target.bufferY, segment.width, segment.argb);
+
+        // The segments are stepped in turns, so the branch predictor can't
+        // follow the pattern of a single line; the decision variable is
+        // brought back into (0, denominator] without branches instead.
+        //
+
+        segment.numSteps--;
+        error += segment.step;
+        int carry = (int) ((denominator - error) >>> 63);
+        int borrow = (int) ((error - 1) >>> 63);
+        segment.error = error + (borrow - carry) * denominator;
+        segment.minor = minor + carry - borrow;
+    }
+
+    /**
+     * Steps the specified x-major active segment until its minor coordinate
+     * is 2 rows past the specified one; a pixel is at most 1 row away from
+     * the one selected by the decision variable, so the segment is complete
+     * for the row then. The decision variable only grows along the walk, so
+     * the pixels up to the next tie or the next end pixel are in the same row
+     * and are added as a single run.
+     */
+    void stepRuns(ActiveSegment segment, LineSampler target, int row)
+    {
+        int direction = segment.direction;
+        int interiorFirst = segment.interiorFirst;
+        int interiorLast = segment.interiorLast;
+        long denominator = segment.denominator;
+        long margin = segment.margin;
+        long step = segment.step;
+
+        int pixel = segment.pixel;
+        int numSteps = segment.numSteps;
+        int minor = segment.minor;
+        long error = segment.error;
+
+        while (numSteps > 0 && minor <= row + 1)
+        {
+            int count = 1;
+            boolean interior = pixel >= interiorFirst && pixel <= interiorLast;
+            boolean tie = error <= margin || error >= denominator - margin;
+
+            if (!interior || tie)
+                testStep(segment, target, row, pixel, minor);
+            else
+            {
+                count = (step > 0)
+                        ? (int) Math.min((denominator - margin - error + step - 1) / step, numSteps)
+                        : numSteps;
+                count = Math.min(count, (direction > 0) ? interiorLast - pixel + 1 : pixel - interiorFirst + 1);
+
+                if (minor >= segment.minorPosition && minor <= segment.minorLast)
+                    addRun(segment, target, row, (direction > 0) ? pixel : pixel - count + 1, minor, count);
+            }
+
+            pixel += direction * count;
+            numSteps -= count;
+            error += step * count;
+            if (error > denominator)
+            {
+                error -= denominator;
+                minor++;
+            }
+        }
+
+        segment.pixel = pixel;
+        segment.numSteps = numSteps;
+        segment.minor = minor;
+        segment.error = error;
+    }
+
+    /**
+     * Tests the pixels next to the one with the specified coordinates along
+     * the major and the minor axis of the specified active segment against
+     * the "diamond exit" rule and adds the ones which belong to the segment
+     * like
+     * {@link #addPixel(ActiveSegment, LineSampler, int, int, int) addPixel}.
+     */
+    void testStep(ActiveSegment segment, LineSampler target, int row, int major, int minor)
+    {
+        load(segment);
+        for (int candidate = minor - 1; candidate <= minor + 1; candidate++)
+        {
+            if (candidate < segment.minorPosition || candidate > segment.minorLast)
+                continue;
+
+            if (segment.xMajor)
+            {
+                if (rasterizer.belongsToRepresentation(major, candidate))
+                    addPixel(segment, target, row, major, candidate);
+            }
+            else if (rasterizer.belongsToRepresentation(candidate, major))
+                addPixel(segment, target, row, candidate, major);
+        }
+    }
+
+    /**
+     * Adds the pixel with the specified coordinates to the specified active
+     * segment like {@link #addRun addRun}. Every pixel of a y-major segment
+     * is a run of the segment's width, like the span passed to the sampler
+     * when the segment is replayed.
+     */
+    static void addPixel(ActiveSegment segment, LineSampler target, int row, int x, int y)
+    {
+        addRun(segment, target, row, x, y, segment.xMajor ? 1 : segment.width);
+    }
+
+    /**
+     * Adds the run with the specified coordinates and length to the specified
+     * active segment. The run covers as many rows as the segment is wide if
+     * the segment is x-major and a single row otherwise; the part of the run
+     * in the specified row is passed to the specified sampler right away, the
+     * rest is added to the pending runs. The runs of an x-major segment
+     * extend the last pending run if they are next to it and cover the same
+     * rows.
+     */
+    static void addRun(ActiveSegment segment, LineSampler target, int row, int x, int y, int length)
+    {
+        int lastRow = y + (segment.xMajor ? segment.width - 1 : 0);
+        if (y == row)
+        {
+            if (length == 1)
+                target.sample(x - target.bufferX, row - target.bufferY, segment.argb);
+            else
+                target.sampleSpan(x - target.bufferX, row - target.bufferY, length, segment.argb);
+
+            if (lastRow == row)
+                return;
+            y = row + 1;
+        }
+
+        int[] pending = segment.pending;
+        int end = segment.numPending * 4;
+
+        if (segment.xMajor && end > 0 && pending[end - 4] == y && pending[end - 3] == lastRow)
+        {
+            if (pending[end - 2] + pending[end - 1] == x)
+            {
+                pending[end - 1] += length;
+                return;
+            }
+            if (pending[end - 2] - length == x)
+            {
+                pending[end - 2] = x;
+                pending[end - 1] += length;
+                return;
+            }
+        }
+
+        if (end == pending.length)
+            segment.pending = pending = Arrays.copyOf(pending, end * 2);
+
+        pending[end] = y;
+        pending[end + 1] = lastRow;
+        pending[end + 2] = x;
+        pending[end + 3] = length;
+        segment.numPending++;
+    }
+
+    /**
+     * Passes the pending runs of the specified active segment which cover the
+     * specified row to the specified sampler and discards the runs which
+     * don't cover any later row.
+     */
+    static void emit(ActiveSegment segment, LineSampler target, int row)
+    {
+        int[] pending = segment.pending;
+        int end = segment.numPending * 4;
+        int numKept = 0;
+
+        for (int run = 0; run < end; run += 4)
+        {
+            if (pending[run] <= row)
+            {
+                int x = pending[run + 2] - target.bufferX;
+                int length = pending[run + 3];
+                if (length == 1)
+                    target.sample(x, row - target.bufferY, segment.argb);
+                else
+                    target.sampleSpan(x, row - target.bufferY, length, segment.argb);
+            }
+
+            if (pending[run + 1] > row)
+            {
+                System.arraycopy(pending, run, pending, numKept * 4, 4);
+                numKept++;
+            }
+        }
+        segment.numPending = numKept;
+    }
+
+    /**
+     * Restores the line of the specified active segment in the rasterizer
+     * for testing its pixels against the "diamond exit" rule, unless it is
+     * already loaded.
+     */
+    void load(ActiveSegment segment)
+    {
+        if (loadedSegment != segment.index)
+        {
+            rasterizer.p1.setLocation(segment.x1, segment.y1);
+            rasterizer.p2.setLocation(segment.x2, segment.y2);
+            rasterizer.a = segment.a;
+            rasterizer.b = segment.b;
+            rasterizer.c = segment.c;
+            rasterizer.xMajor = segment.xMajor;
+            loadedSegment = segment.index;
+        }
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public LineRasterizer getRasterizer()
+    {
+        return rasterizer;
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+import com.podrug.line.RasterSampler.Layout;
+import com.podrug.line.util.ColorMath;
+
+/**
+ * This class implements a destination raster into which several threads can
+ * render lines at the same time. Every thread renders with its own
+ * {@link LineRasterizer} into its own {@link SharedSampler} created by the
+ * raster.
+ * <p>
+ * The locking is chosen up front with the {@link Mode} of the raster. In the
+ * default {@link Mode#BLENDING} mode, the samples are composited using the
+ * SrcOver rule while holding the lock of the row; the rows share a fixed
+ * number of locks in an interleaved manner, so threads rarely wait for each
+ * other unless they write the same rows. A raster in {@link Mode#OPAQUE} mode
+ * only accepts opaque samples and stores them without locking, since no
+ * concurrent blend can overwrite them.
+ * <p>
+ * If the raster is {@link Mode#ORDERED ordered}, every sampler has an order
+ * and every pixel remembers the highest order of the samplers which have
+ * written it. Samples of a sampler with a lower order are discarded, so the
+ * opaque samples yield the same pixels as if the samplers rendered one after
+ * another in their order, regardless of how the threads are scheduled. Only
+ * opaque output is deterministic: translucent samples of samplers with the
+ * same order or of lower orders written before higher ones are blended in the
+ * order in which the threads happen to write them. Ordered rasters need an
+ * additional {@code int} per pixel.
+ * <p>
+ * The pixels written by a thread are visible to other threads once the
+ * threads synchronize, for example when the rendering threads are joined.
+ */
+public class SharedRaster
+{
+    /***************************************************************************
+     * HELPER TYPES                                                            *
+     **************************************************************************/
+
+    /**
+     * Enumerates the ways in which the samplers of a raster write its pixels.
+     */
+    public static enum Mode
+    {
+        /**
+         * Only opaque samples are accepted and stored without locking; a
+         * translucent sample causes an {@link IllegalStateException}.
+         */
+        OPAQUE,
+
+        /**
+         * The samples are composited while holding the lock of the row.
+         */
+        BLENDING,
+
+        /**
+         * The samples are composited while holding the lock of the row and
+         * the samples of samplers with a lower order than the one which last
+         * wrote a pixel are discarded.
+         */
+        ORDERED
+    }
+
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The number of locks shared by the rows; must be a power of 2.
+     */
+    static final int NUM_LOCKS = 256;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final int[] data;
+    final int offset;
+    final int scanline;
+    final int width;
+    final int height;
+    final Layout layout;
+    final Object[] locks;
+    final Mode mode;
+    final int[] owners;
+
+    /**
+     * Creates a blending raster which writes into the specified image. The
+     * image must be of a type supported by {@link RasterSampler}.
+     */
+    public SharedRaster(BufferedImage image)
+    {
+        this(image, Mode.BLENDING);
+    }
+
+    /**
+     * Creates a raster with the specified mode which writes into the
+     * specified image. The image must be of a type supported by
+     * {@link RasterSampler}.
+     */
+    public SharedRaster(BufferedImage image, Mode mode)
+    {
+        this(image.getRaster(), RasterSampler.layoutOf(image), mode);
+    }
+
+    /**
+     * Creates a raster with the specified mode which writes into the
+     * specified array of pixels with the specified layout. The array is
+     * addressed with the specified offset of the top-left pixel and the
+     * specified number of elements per row.
+     */
+    public SharedRaster(
+                int[] data,
+                int offset,
+                int scanline,
+                int width,
+                int height,
+                Layout layout,
+                Mode mode
+                )
+    {
+        if (data == null)
+            throw new IllegalArgumentException("The data cannot be null.");
+        if (layout == null)
+            throw new IllegalArgumentException("The layout cannot be null.");
+        if (mode == null)
+            throw new IllegalArgumentException("The mode cannot be null.");
+        if (width < 0 || height < 0 || scanline < width)
+            throw new IllegalArgumentException("The dimensions are invalid.");
+        if (mode == Mode.ORDERED && (long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The raster is too large to be ordered.");
+
+        this.data = data;
+        this.offset = offset;
+        this.scanline = scanline;
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.mode = mode;
+        this.owners = (mode == Mode.ORDERED) ? new int[width * height] : null;
+
+        this.locks = new Object[NUM_LOCKS];
+        for (int index = 0; index < NUM_LOCKS; index++)
+            locks[index] = new Object();
+    }
+
+    SharedRaster(WritableRaster raster, Layout layout, Mode mode)
+    {
+        this(
+            RasterSampler.dataOf(raster),
+            RasterSampler.offsetOf(raster),
+            RasterSampler.scanlineOf(raster),
+            raster.getWidth(),
+            raster.getHeight(),
+            layout,
+            mode
+            );
+    }
+
+    /**
+     * Creates a sampler with the order 0 which writes into the raster.
+     */
+    public SharedSampler createSampler()
+    {
+        return createSampler(0);
+    }
+
+    /**
+     * Creates a sampler with the specified order which writes into the
+     * raster. The order is ignored unless the raster is ordered.
+     */
+    public SharedSampler createSampler(int order)
+    {
+        if (order < 0 || order == Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The order must be between 0 and 2^31 - 2 inclusive.");
+
+        return new SharedSampler(this, order);
+    }
+
+    /**
+     * Composites the specified ARGB value with the specified compositor into
+     * the horizontal span of the specified length starting at the specified
+     * coordinates on behalf of a sampler with the specified order. The part
+     * of the span outside the raster is ignored.
+     */
+    void compositeSpan(int x, int y, int length, int argb, Compositor compositor, int order)
+    {
+        if (y < 0 || y >= height)
+            return;
+
+        int first = Math.max(x, 0);
+        int last = Math.min(x + length, width);
+        if (first >= last)
+            return;
+
+        int alpha = compositor.prepare(argb);
+        if (alpha == 0)
+            return;
+
+        int index = offset + y * scanline + first;
+        int end = index + last - first;
+
+        // A store of an int is atomic and no sample is blended, so the pixels
+        // of an opaque raster don't need a lock.
+        //
+
+        if (mode == Mode.OPAQUE)
+        {
+            if (alpha != ColorMath.MAX)
+                throw new IllegalStateException("The raster only accepts opaque samples.");
+
+            compositor.composite(data, index, end - index, argb, alpha);
+            return;
+        }
+
+        synchronized (locks[y & (NUM_LOCKS - 1)])
+        {
+            if (owners == null)
+            {
+                compositor.composite(data, index, end - index, argb, alpha);
+                return;
+            }
+
+            // The owners are stored as the order plus 1, so the initial 0
+            // doesn't belong to any sampler.
+            //
+
+            int owner = order + 1;
+            int ownerIndex = y * width + first;
+            for (; index < end; index++, ownerIndex++)
+            {
+                if (owners[ownerIndex] > owner)
+                    continue;
+
+                owners[ownerIndex] = owner;
+                data[index] = (alpha == ColorMath.MAX) ? argb : compositor.blend(data[index]);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public Layout getLayout()
+    {
+        return layout;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+/**
+ * This class implements a sampler which composites the samples of lines into
+ * a {@link SharedRaster}. A sampler must only be used by one thread at a
+ * time; threads which render into the same raster use their own samplers.
+ *
+ * @see SharedRaster#createSampler(int)
+ */
+public class SharedSampler extends DirectSampler
+{
+    final SharedRaster raster;
+    final Compositor compositor;
+    final int order;
+
+    SharedSampler(SharedRaster raster, int order)
+    {
+        this.raster = raster;
+        this.compositor = new Compositor(raster.layout);
+        this.order = order;
+    }
+
+    @Override
+    public void sample(int x, int y, int argb)
+    {
+        raster.compositeSpan(bufferX + x, bufferY + y, 1, argb, compositor, order);
+    }
+
+    @Override
+    public void sampleSpan(int x, int y, int length, int argb)
+    {
+        raster.compositeSpan(bufferX + x, bufferY + y, length, argb, compositor, order);
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public SharedRaster getRaster()
+    {
+        return raster;
+    }
+
+    public int getOrder()
+    {
+        return order;
+    }
+
+    public float getExtraAlpha()
+    {
+        return compositor.getExtraAlpha();
+    }
+
+    /**
+     * Sets the constant alpha by which the alpha of every sample is scaled.
+     */
+    public void setExtraAlpha(float extraAlpha)
+    {
+        compositor.setExtraAlpha(extraAlpha);
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.podrug.line.RasterSampler.Layout;
+
+/**
+ * This class implements a framebuffer whose pixels are stored outside of the
+ * Java heap, either in a memory-mapped file or in direct buffers, so its
+ * dimensions are not limited by the size of an {@code int[]} and the heap
+ * usage doesn't depend on them.
+ * <p>
+ * The pixels are organized in square tiles. The tiles of a row of tiles form
+ * a band which is stored contiguously and allocated or mapped when it is first
+ * accessed. The pixels can be read back row by row, for example to pass them
+ * to an image encoder one band at a time, after which the band can be
+ * released to free its memory.
+ */
+public class TiledFramebuffer
+{
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The binary logarithm of the default width and height of the tiles.
+     */
+    public static final int DEFAULT_TILE_SHIFT = 8;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    final int width;
+    final int height;
+    final Layout layout;
+    final int tileShift;
+    final int tileSize;
+    final int tileMask;
+    final int tilesX;
+    final int bandLength;
+    final IntBuffer[] bands;
+
+    final FileChannel channel;
+
+    /**
+     * Creates a framebuffer with the specified dimensions and pixel layout
+     * whose pixels are stored in direct buffers.
+     */
+    public TiledFramebuffer(int width, int height, Layout layout)
+    {
+        this(width, height, layout, DEFAULT_TILE_SHIFT, null);
+    }
+
+    /**
+     * Creates a framebuffer with the specified dimensions and pixel layout
+     * whose pixels are stored in the file of the specified channel which is
+     * mapped into memory. The channel must be readable and writable; its
+     * existing content is used as the initial content of the framebuffer.
+     * The channel is not closed by the framebuffer.
+     */
+    public TiledFramebuffer(int width, int height, Layout layout, FileChannel channel)
+    {
+        this(width, height, layout, DEFAULT_TILE_SHIFT, channel);
+    }
+
+    /**
+     * Creates a framebuffer with the specified dimensions, pixel layout and
+     * binary logarithm of the tile size. If a channel is specified, the pixels
+     * are stored in its file, otherwise they are stored in direct buffers.
+     */
+    public TiledFramebuffer(int width, int height, Layout layout, int tileShift, FileChannel channel)
+    {
+        if (width < 0 || height < 0)
+            throw new IllegalArgumentException("The dimensions cannot be negative.");
+        if (layout == null)
+            throw new IllegalArgumentException("The layout cannot be null.");
+        if (tileShift < 0 || tileShift > 12)
+            throw new IllegalArgumentException("The tile shift must be between 0 and 12 inclusive.");
+
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.tileShift = tileShift;
+        this.tileSize = 1 << tileShift;
+        this.tileMask = tileSize - 1;
+        this.tilesX = (width + tileMask) >>> tileShift;
+
+        long length = (long) tilesX << (2 * tileShift);
+        if (length * 4 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The framebuffer is too wide for the tile size.");
+
+        this.bandLength = (int) length;
+        this.bands = new IntBuffer[(height + tileMask) >>> tileShift];
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the pixel with the specified coordinates; pixels outside the
+     * framebuffer are 0.
+     */
+    public int getPixel(int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return 0;
+
+        IntBuffer band = band(y >>> tileShift, false);
+        return (band != null) ? band.get(indexOf(x, y)) : 0;
+    }
+
+    /**
+     * Stores the specified value in the pixel with the specified coordinates;
+     * pixels outside the framebuffer are ignored.
+     */
+    public void setPixel(int x, int y, int value)
+    {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return;
+
+        band(y >>> tileShift, true).put(indexOf(x, y), value);
+    }
+
+    /**
+     * Copies the specified number of rows starting at the specified row to the
+     * specified array. The array is addressed with the specified offset of the
+     * first pixel and the specified number of elements per row.
+     */
+    public void readRows(int y, int numRows, int[] data, int offset, int scanline)
+    {
+        if (y < 0 || numRows < 0 || y + numRows > height)
+            throw new IllegalArgumentException("The rows are outside the framebuffer.");
+
+        for (int row = y; row < y + numRows; row++)
+        {
+            int rowOffset = offset + (row - y) * scanline;
+            IntBuffer band = band(row >>> tileShift, false);
+            if (band == null)
+            {
+                Arrays.fill(data, rowOffset, rowOffset + width, 0);
+                continue;
+            }
+
+            band = band.duplicate();
+            for (int x = 0; x < width; x += tileSize)
+            {
+                band.position(indexOf(x, row));
+                band.get(data, rowOffset + x, Math.min(tileSize, width - x));
+            }
+        }
+    }
+
+    /**
+     * Releases the band with the specified index, which contains the rows
+     * starting at the index multiplied by the tile size. A direct buffer is
+     * freed once it is garbage collected and its pixels are lost, so the band
+     * reads as 0 afterwards; a mapped band keeps its pixels in the file and is
+     * mapped again when it is next accessed.
+     */
+    public void releaseBand(int index)
+    {
+        if (index < 0 || index >= bands.length)
+            throw new IllegalArgumentException("The band is outside the framebuffer.");
+
+        bands[index] = null;
+    }
+
+    /**
+     * Composites the specified ARGB value with the specified compositor into
+     * the horizontal span of the specified length starting at the specified
+     * coordinates. The part of the span outside the framebuffer is ignored.
+     */
+    void compositeSpan(int x, int y, int length, int argb, Compositor compositor)
+    {
+        if (y < 0 || y >= height)
+            return;
+
+        int first = Math.max(x, 0);
+        int last = Math.min(x + length, width);
+        if (first >= last)
+            return;
+
+        int alpha = compositor.prepare(argb);
+        if (alpha == 0)
+            return;
+
+        IntBuffer band = band(y >>> tileShift, true);
+        while (first < last)
+        {
+            int count = Math.min(last - first, tileSize - (first & tileMask));
+            compositor.composite(band, indexOf(first, y), count, argb, alpha);
+            first += count;
+        }
+    }
+
+    /**
+     * Returns the index of the pixel with the specified coordinates within its
+     * band.
+     */
+    int indexOf(int x, int y)
+    {
+        return ((x >>> tileShift) << (2 * tileShift))
+                + ((y & tileMask) << tileShift)
+                + (x & tileMask);
+    }
+
+    /**
+     * Returns the band with the specified index. If the band has not been
+     * accessed so far, it is mapped from the file or, if no file is used and
+     * the band is to be written, allocated; otherwise null is returned.
+     */
+    IntBuffer band(int index, boolean write)
+    {
+        IntBuffer band = bands[index];
+        if (band != null || (channel == null && !write))
+            return band;
+
+        ByteBuffer buffer;
+        if (channel != null)
+        {
+            long bandBytes = (long) bandLength * 4;
+            try
+            {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, index * bandBytes, bandBytes);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("The band cannot be mapped.", e);
+            }
+        }
+        else
+            buffer = ByteBuffer.allocateDirect(bandLength * 4);
+
+        band = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+        bands[index] = band;
+        return band;
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public Layout getLayout()
+    {
+        return layout;
+    }
+
+    public int getTileSize()
+    {
+        return tileSize;
+    }
+
+    public int getNumBands()
+    {
+        return bands.length;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line;
+
+/**
+ * This class implements a sampler which composites the samples of lines
+ * directly into a {@link TiledFramebuffer} using the SrcOver rule.
+ *
+ * @see RasterSampler
+ */
+public class TiledSampler extends DirectSampler
+{
+    final TiledFramebuffer framebuffer;
+    final Compositor compositor;
+
+    /**
+     * Creates a sampler which composites into the specified framebuffer.
+     */
+    public TiledSampler(TiledFramebuffer framebuffer)
+    {
+        if (framebuffer == null)
+            throw new IllegalArgumentException("The framebuffer cannot be null.");
+
+        this.framebuffer = framebuffer;
+        this.compositor = new Compositor(framebuffer.layout);
+    }
+
+    @Override
+    public void sample(int x, int y, int argb)
+    {
+        framebuffer.compositeSpan(bufferX + x, bufferY + y, 1, argb, compositor);
+    }
+
+    @Override
+    public void sampleSpan(int x, int y, int length, int argb)
+    {
+        framebuffer.compositeSpan(bufferX + x, bufferY + y, length, argb, compositor);
+    }
+
+    /***************************************************************************
+     * PROPERTY ACCESSORS                                                      *
+     **************************************************************************/
+
+    public TiledFramebuffer getFramebuffer()
+    {
+        return framebuffer;
+    }
+
+    public float getExtraAlpha()
+    {
+        return compositor.getExtraAlpha();
+    }
+
+    /**
+     * Sets the constant alpha by which the alpha of every sample is scaled.
+     */
+    public void setExtraAlpha(float extraAlpha)
+    {
+        compositor.setExtraAlpha(extraAlpha);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Mihail Ivanchev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.podrug.line.util;
+
+/**
+ * This static class encapsulates tools for manipulating packed 32 bit ARGB
+ * values with 8 bits per component.
+ */
+public final class ColorMath
+{
+    /***************************************************************************
+     * CONSTANTS                                                               *
+     **************************************************************************/
+
+    /**
+     * The maximum value of a component.
+     */
+    public static final int MAX = 0xFF;
+
+    /**
+     * The mask of the alpha component.
+     */
+    public static final int ALPHA_MASK = 0xFF000000;
+
+    /***************************************************************************
+     * MEMBERS                                                                 *
+     **************************************************************************/
+
+    /**
+     * The constructor of this class is private, because it cannot be
+     * instantiated.
+     */
+    private ColorMath()
+    {
+    }
+
+    /**
+     * Multiplies two components interpreted as fractions of 255 and returns
+     * the rounded result.
+     */
+    public static int mul8(int a, int b)
+    {
+        int product = a * b + 0x80;
+        return (product + (product >>> 8)) >>> 8;
+    }
+
+    /**
+     * Returns the specified ARGB value with its alpha component replaced by the
+     * specified one.
+     */
+    public static int withAlpha(int argb, int alpha)
+    {
+        return (argb & ~ALPHA_MASK) | (alpha << 24);
+    }
+
+    /**
+     * Converts the specified non-premultiplied ARGB value to its premultiplied
+     * representation.
+     */
+    public static int premultiply(int argb)
+    {
+        int alpha = argb >>> 24;
+        if (alpha == MAX)
+            return argb;
+        else if (alpha == 0)
+            return 0;
+
+        return (argb & ALPHA_MASK)
+                | (mul8((argb >>> 16) & MAX, alpha) << 16)
+                | (mul8((argb >>> 8) & MAX, alpha) << 8)
+                | mul8(argb & MAX, alpha);
+    }
+
+    /**
+     * Converts the specified premultiplied ARGB value to its non-premultiplied
+     * representation.
+     */
+    public static int unpremultiply(int argb)
+    {
+        int alpha = argb >>> 24;
+        if (alpha == MAX)
+            return argb;
+        else if (alpha == 0)
+            return 0;
+
+        int half = alpha >>> 1;
+        return (argb & ALPHA_MASK)
+                | (Math.min((((argb >>> 16) & MAX) * MAX + half) / alpha, MAX) << 16)
+                | (Math.min((((argb >>> 8) & MAX) * MAX + half) / alpha, MAX) << 8)
+                | Math.min(((argb & MAX) * MAX + half) / alpha, MAX);
+    }
+
+    /**
+     * Composites the specified premultiplied source over the specified
+     * premultiplied destination and returns the premultiplied result.
+     */
+    public static int srcOverPremultiplied(int dst, int src)
+    {
+        int inverse = MAX - (src >>> 24);
+        return src
+                + (mul8(dst >>> 24, inverse) << 24)
+                + (mul8((dst >>> 16) & MAX, inverse) << 16)
+                + (mul8((dst >>> 8) & MAX, inverse) << 8)
+                + mul8(dst & MAX, inverse);
+    }
+
+    /**
+     * Composites the specified premultiplied source over the specified
+     * non-premultiplied destination and returns the non-premultiplied result.
+     */
+    public static int srcOver(int dst, int src)
+    {
+        return unpremultiply(srcOverPremultiplied(premultiply(dst), src));
+    }
+}